@@ -0,0 +1,326 @@
+package uk.ac.aber.dcs.backend;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures how many bytes every cipher allocates per character on its hot paths, and fails any that go over
+ * budget. Ways that return new text may allocate the output and one working copy of it, ways that work in place
+ * or read a view may only allocate a little per call. A transposition of a whole string also needs somewhere to
+ * move its letters to, so it may allocate one copy more. Allocation is read from
+ * {@link com.sun.management.ThreadMXBean#getThreadAllocatedBytes(long[])} for every thread, so the threads a
+ * large batch is split between are counted too. Each way is run a few times first so the measured runs are
+ * compiled.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public class AllocationCheck {
+    /**
+     * Bytes per character allowed for ways that return new text.
+     */
+    public static final double COPY_BUDGET = 2.5;
+
+    /**
+     * Bytes per character allowed for ways that work in place or read a view.
+     */
+    public static final double IN_PLACE_BUDGET = 0.05;
+
+    /**
+     * Bytes per character allowed for a transposition that returns new text.
+     */
+    public static final double TRANSPOSITION_BUDGET = 3.5;
+
+    private static final String[] CIPHERS = {"Caesar Cipher", "Keyed Caesar Cipher", "Vigenere Cipher",
+            "Running Key Cipher", "Autokey Cipher", "Columnar Transposition Cipher"};
+    private static final int MESSAGE_LENGTH = 256;
+
+    private final com.sun.management.ThreadMXBean threads;
+    private final int length;
+    private final int rounds;
+
+    /**
+     * Creates a check.
+     *
+     * @param length length of the text run through each way
+     * @param rounds number of runs warmed up, and then measured, for each way
+     */
+    public AllocationCheck(int length, int rounds) {
+        if (length < MESSAGE_LENGTH || rounds < 1) {
+            throw new IllegalArgumentException("Length must be at least " + MESSAGE_LENGTH
+                    + " and rounds at least 1");
+        }
+        threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            throw new UnsupportedOperationException("This JVM can't measure allocation per thread");
+        }
+        threads.setThreadAllocatedMemoryEnabled(true);
+        this.length = length;
+        this.rounds = rounds;
+    }
+
+    /**
+     * Measures every way of running every cipher.
+     *
+     * @return a result for each cipher and way that applies to it
+     * @throws IOException thrown when the running key cipher's book cannot be written
+     */
+    public List<Result> run() throws IOException {
+        Random random = new Random(length);
+        String text = randomText(random, length);
+        Path book = Files.createTempFile("allocation", ".txt");
+        try {
+            try (Writer out = Files.newBufferedWriter(book, StandardCharsets.ISO_8859_1)) {
+                out.write(randomText(random, length).replace(' ', 'E'));
+            }
+
+            List<Result> results = new ArrayList<>();
+            for (String cipherName : CIPHERS) {
+                CipherEncryptor cipher = CipherEncryptor.forName(cipherName);
+                cipher.setShift(3);
+                switch (cipherName) {
+                    case "Keyed Caesar Cipher" -> cipher.setKey("KEYWORD");
+                    case "Vigenere Cipher" -> cipher.setKey("LEMON");
+                    case "Running Key Cipher" -> cipher.setKey(book.toString());
+                    case "Autokey Cipher" -> cipher.setKey("QUEEN");
+                    case "Columnar Transposition Cipher" -> cipher.setKey("ZEBRAS");
+                    default -> {
+                    }
+                }
+                for (Way way : Way.values()) {
+                    if (way.appliesTo(cipher)) {
+                        results.add(measure(cipher, way, text));
+                    }
+                }
+            }
+            return results;
+        } finally {
+            Files.deleteIfExists(book);
+        }
+    }
+
+    /**
+     * Runs one way of one cipher, first to warm it up and then to measure it.
+     *
+     * @param cipher the cipher, with its key set
+     * @param way    the way of running it
+     * @param text   the text
+     * @return how much it allocated per character
+     */
+    private Result measure(CipherEncryptor cipher, Way way, String text) {
+        Way.Input input = new Way.Input(text);
+        for (int i = 0; i < rounds; i++) {
+            way.run(cipher, input);
+        }
+        long before = allocatedBytes();
+        for (int i = 0; i < rounds; i++) {
+            way.run(cipher, input);
+        }
+        long allocated = allocatedBytes() - before;
+        return new Result(cipher.getCipherName(), way, way.budgetFor(cipher),
+                (double) allocated / ((long) rounds * text.length()));
+    }
+
+    /**
+     * returns the bytes allocated so far by every live thread.
+     *
+     * @return bytes allocated
+     */
+    private long allocatedBytes() {
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            // Threads that ended between the two calls show as -1
+            total += Math.max(0, bytes);
+        }
+        return total;
+    }
+
+    /**
+     * Makes random upper case text with spaces, so every way can take it.
+     *
+     * @param random the random source
+     * @param length length of the text
+     * @return the text
+     */
+    private static String randomText(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = random.nextInt(6) == 0 ? ' ' : (char) ('A' + random.nextInt(26));
+        }
+        return new String(chars);
+    }
+
+    /**
+     * The hot paths measured, each with its budget.
+     */
+    private enum Way {
+        ENCRYPT_STRING(COPY_BUDGET) {
+            @Override
+            double budgetFor(CipherEncryptor cipher) {
+                return cipher instanceof ColumnarTranspositionCipher ? TRANSPOSITION_BUDGET : COPY_BUDGET;
+            }
+
+            @Override
+            void run(CipherEncryptor cipher, Input input) {
+                input.sink += cipher.encrypt(input.text).length();
+            }
+        },
+        DECRYPT_STRING(COPY_BUDGET) {
+            @Override
+            double budgetFor(CipherEncryptor cipher) {
+                return cipher instanceof ColumnarTranspositionCipher ? TRANSPOSITION_BUDGET : COPY_BUDGET;
+            }
+
+            @Override
+            void run(CipherEncryptor cipher, Input input) {
+                input.sink += cipher.decrypt(input.text).length();
+            }
+        },
+        BYTES(IN_PLACE_BUDGET) {
+            @Override
+            void run(CipherEncryptor cipher, Input input) {
+                cipher.encrypt(input.bytes, 0, input.bytes.length, 0);
+                cipher.decrypt(input.bytes, 0, input.bytes.length, 0);
+            }
+        },
+        DIRECT_BUFFER(IN_PLACE_BUDGET) {
+            @Override
+            void run(CipherEncryptor cipher, Input input) {
+                input.src.clear();
+                input.dst.clear();
+                cipher.encrypt(input.src, input.dst, 0);
+                input.src.clear();
+                input.dst.flip();
+                cipher.decrypt(input.dst, input.src, 0);
+            }
+        },
+        VIEW(IN_PLACE_BUDGET) {
+            @Override
+            boolean appliesTo(CipherEncryptor cipher) {
+                return cipher.isPositional() && cipher.getBlockSize() == 1;
+            }
+
+            @Override
+            void run(CipherEncryptor cipher, Input input) {
+                CharSequence view = cipher.encryptedView(input.text);
+                for (int i = 0, n = view.length(); i < n; i++) {
+                    input.sink += view.charAt(i);
+                }
+            }
+        },
+        BATCH(COPY_BUDGET) {
+            @Override
+            void run(CipherEncryptor cipher, Input input) {
+                input.sink += cipher.encrypt(input.batch).getTotalLength();
+            }
+        };
+
+        private final double budget;
+
+        Way(double budget) {
+            this.budget = budget;
+        }
+
+        /**
+         * Checks whether a cipher can be run this way.
+         *
+         * @param cipher the cipher
+         * @return true if it can
+         */
+        boolean appliesTo(CipherEncryptor cipher) {
+            return true;
+        }
+
+        /**
+         * returns the budget for running a cipher this way.
+         *
+         * @param cipher the cipher
+         * @return bytes per character allowed
+         */
+        double budgetFor(CipherEncryptor cipher) {
+            return budget;
+        }
+
+        /**
+         * Runs the text through the cipher this way once.
+         *
+         * @param cipher the cipher
+         * @param input  the text, in every form the ways need, made before measuring
+         */
+        abstract void run(CipherEncryptor cipher, Input input);
+
+        /**
+         * The text in every form the ways take, so making them isn't measured, and somewhere to put results so
+         * they aren't optimised away.
+         */
+        private static final class Input {
+            private final String text;
+            private final byte[] bytes;
+            private final ByteBuffer src;
+            private final ByteBuffer dst;
+            private final MessageBatch batch;
+            private long sink;
+
+            private Input(String text) {
+                this.text = text;
+                bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+                src = ByteBuffer.allocateDirect(bytes.length).put(bytes);
+                dst = ByteBuffer.allocateDirect(bytes.length);
+                List<String> messages = new ArrayList<>();
+                for (int i = 0; i + MESSAGE_LENGTH <= text.length(); i += MESSAGE_LENGTH) {
+                    messages.add(text.substring(i, i + MESSAGE_LENGTH));
+                }
+                batch = MessageBatch.of(messages);
+            }
+        }
+    }
+
+    /**
+     * How much one way of running one cipher allocated.
+     */
+    public static final class Result {
+        private final String cipherName;
+        private final Way way;
+        private final double budget;
+        private final double bytesPerChar;
+
+        private Result(String cipherName, Way way, double budget, double bytesPerChar) {
+            this.cipherName = cipherName;
+            this.way = way;
+            this.budget = budget;
+            this.bytesPerChar = bytesPerChar;
+        }
+
+        /**
+         * returns whether it stayed within its budget.
+         *
+         * @return true if it passed
+         */
+        public boolean passed() {
+            return bytesPerChar <= budget;
+        }
+
+        /**
+         * returns the bytes allocated per character.
+         *
+         * @return bytes per character
+         */
+        public double getBytesPerChar() {
+            return bytesPerChar;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-30s %-15s %8.3f bytes/char (budget %.2f) %s", cipherName,
+                    way.name().toLowerCase().replace('_', ' '), bytesPerChar, budget, passed() ? "ok" : "FAILED");
+        }
+    }
+}
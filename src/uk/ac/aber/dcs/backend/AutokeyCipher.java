@@ -0,0 +1,353 @@
+package uk.ac.aber.dcs.backend;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.InputMismatchException;
+import java.util.Scanner;
+
+/**
+ * The autokey cipher class - a vigenere cipher whose key is a keyword followed by the plain text itself, so the key
+ * is as long as the message. Only the last keyword's length of plain text is remembered while streaming, so texts
+ * of any size can be processed, but they must be processed in order from the start. Texts transformed a part at a
+ * time are each given their own state by {@link #startText()}. The positional methods keep one text per thread,
+ * so a thread must finish one text before starting the next.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public class AutokeyCipher extends CipherEncryptor {
+    private String key;
+    private int[] keywordShifts;
+    private volatile int generation;
+    private final ThreadLocal<Progress> progress = ThreadLocal.withInitial(Progress::new);
+
+    /**
+     * Creates an AutokeyCipher object. Sets the key location, creates a scanner and empties the raw text.
+     */
+    public AutokeyCipher() {
+        setKeyLocation("./text/autokeyKey.txt");
+        super.read = new Scanner(System.in);
+        setRawText("");
+    }
+
+    /**
+     * Encrypts the text using the keyword and then the text itself as the key.
+     *
+     * @param text the string to encrypt
+     * @return encrypted text
+     */
+    @Override
+    public String encrypt(String text) {
+        return transform(text, false);
+    }
+
+    /**
+     * Decrypts the cipher text and prints the result.
+     */
+    @Override
+    public void decrypt() {
+        System.out.println(decrypt(getCipherText()));
+    }
+
+    /**
+     * Runs a whole string through the cipher from the start.
+     *
+     * @param text    the string to transform
+     * @param decrypt true to decrypt, false to encrypt
+     * @return the transformed text
+     */
+    @Override
+    String transformText(String text, boolean decrypt) {
+        return transformTextInChunks(text, decrypt);
+    }
+
+    /**
+     * Starts a text with the keyword as the start of its key.
+     *
+     * @return the state of a new text, at position 0
+     */
+    @Override
+    public TextState startText() {
+        Progress text = new Progress();
+        text.reset(keywordShifts(), generation);
+        return text;
+    }
+
+    /**
+     * Runs the next part of a text through the cipher, carrying on from its state.
+     *
+     * @param text    the text, started by this cipher
+     * @param data    the bytes to transform
+     * @param offset  index of the first byte
+     * @param length  number of bytes
+     * @param decrypt true to decrypt, false to encrypt
+     * @throws IllegalStateException thrown when the keyword has changed since the text was started
+     */
+    @Override
+    void transform(TextState text, byte[] data, int offset, int length, boolean decrypt) {
+        Progress current = (Progress) text;
+        if (current.generation != generation) {
+            throw new IllegalStateException("The keyword changed part way through the text");
+        }
+        for (int i = offset, end = offset + length; i < end; i++) {
+            data[i] = current.step(data[i], decrypt);
+        }
+    }
+
+    /**
+     * Runs part of a byte array through the cipher. Must carry on from where the last call on this thread stopped,
+     * or start again at position 0.
+     *
+     * @param data     the bytes to transform
+     * @param offset   index of the first byte
+     * @param length   number of bytes
+     * @param position position of the first byte within the whole text
+     * @param decrypt  true to decrypt, false to encrypt
+     */
+    @Override
+    void transform(byte[] data, int offset, int length, long position, boolean decrypt) {
+        Progress current = progressAt(position);
+        for (int i = offset, end = offset + length; i < end; i++) {
+            data[i] = current.step(data[i], decrypt);
+        }
+    }
+
+    /**
+     * Runs the remaining bytes of a buffer through the cipher, carrying on from where the last call on this thread
+     * stopped.
+     *
+     * @param src      the buffer to read
+     * @param dst      the buffer to write
+     * @param position position of the first byte within the whole text
+     * @param decrypt  true to decrypt, false to encrypt
+     */
+    @Override
+    void transform(ByteBuffer src, ByteBuffer dst, long position, boolean decrypt) {
+        Progress current = progressAt(position);
+        while (src.hasRemaining()) {
+            dst.put(current.step(src.get(), decrypt));
+        }
+    }
+
+    /**
+     * Finds this thread's progress through the text, starting again when asked for position 0.
+     *
+     * @param position the position about to be transformed
+     * @return progress through the text
+     */
+    private Progress progressAt(long position) {
+        Progress current = progress.get();
+        if (position == 0 || current.generation != generation) {
+            current.reset(keywordShifts(), generation);
+        } else if (position != current.next) {
+            throw new IllegalStateException("Autokey text must be processed in order from the start");
+        }
+        return current;
+    }
+
+    /**
+     * returns the shift for each keyword letter, working them out after a key change.
+     *
+     * @return keyword shifts
+     */
+    private int[] keywordShifts() {
+        int[] shifts = keywordShifts;
+        if (shifts == null) {
+            shifts = new int[key.length()];
+            for (int i = 0; i < shifts.length; i++) {
+                shifts[i] = Math.floorMod(key.charAt(i) - 'A', 26);
+            }
+            keywordShifts = shifts;
+        }
+        return shifts;
+    }
+
+    /**
+     * Throws away the keyword shifts and any progress through a text.
+     */
+    @Override
+    void keyChanged() {
+        super.keyChanged();
+        keywordShifts = null;
+        generation++;
+    }
+
+    /**
+     * The key depends on the text before each letter.
+     *
+     * @return false
+     */
+    @Override
+    public boolean isPositional() {
+        return false;
+    }
+
+    /**
+     * writes the current keyword to file.
+     *
+     * @throws IOException thrown when the key cannot be saved
+     */
+    public void writeKey() throws IOException {
+        saveKey(key + System.lineSeparator());
+    }
+
+    /**
+     * loads the keyword from the key file.
+     */
+    public void loadKey() {
+        try (Reader fr = openKeyReader();
+             BufferedReader br = new BufferedReader(fr);
+             Scanner infile = new Scanner(br)) {
+
+            String read = "";
+            while (infile.hasNext()) {
+                read = infile.nextLine();
+            }
+
+            if (isKeyword(read)) {
+                key = read.toUpperCase();
+                keyChanged();
+            } else {
+                System.err.println("The saved keyword must only contain letters");
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e);
+        }
+    }
+
+    /**
+     * sets the keyword - must only contain letters.
+     */
+    @Override
+    public void setCipherKey() {
+        try {
+            System.out.println("Please enter the new keyword (letters only): ");
+            String inputKey = read.nextLine();
+            if (isKeyword(inputKey)) {
+                setKey(inputKey);
+                writeKey();
+            } else {
+                System.out.println("Keyword must only contain letters");
+            }
+        } catch (InputMismatchException i) {
+            System.err.println("Incorrect input type. Required: String");
+        } catch (IOException e) {
+            System.err.println("Error: " + e);
+        }
+    }
+
+    /**
+     * returns the cipher name (Autokey Cipher).
+     *
+     * @return Autokey Cipher.
+     */
+    public String getCipherName() {
+        return "Autokey Cipher";
+    }
+
+    /**
+     * Prints the current keyword.
+     */
+    @Override
+    public void printKey() {
+        System.out.println("Keyword: " + key);
+    }
+
+    /**
+     * returns the current keyword.
+     *
+     * @return key variable
+     */
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * sets the keyword.
+     *
+     * @param newKey desired keyword.
+     * @throws IllegalArgumentException thrown when the keyword is empty or has anything other than letters
+     */
+    @Override
+    public void setKey(String newKey) {
+        if (!isKeyword(newKey)) {
+            throw new IllegalArgumentException("Keyword must only contain letters");
+        }
+        key = newKey.toUpperCase();
+        keyChanged();
+    }
+
+    /**
+     * Checks a keyword can be used, it needs at least one letter and nothing else.
+     *
+     * @param keyword the keyword
+     * @return true if it can be used
+     */
+    private static boolean isKeyword(String keyword) {
+        return !keyword.isEmpty() && keyword.chars().allMatch(c -> (c | 0x20) >= 'a' && (c | 0x20) <= 'z');
+    }
+
+    /**
+     * How far a text has got, with the plain text letters that make up the next part of the key.
+     * Anything that isn't a letter is passed through and counts as a shift of 0 in the key.
+     */
+    private static class Progress extends TextState {
+        private int generation = -1;
+        private int[] keywordShifts;
+        private int[] recentPlain;
+        private int slot;
+
+        /**
+         * Starts again from the beginning of a text.
+         *
+         * @param keywordShifts the keyword shifts
+         * @param generation    the key generation they belong to
+         */
+        private void reset(int[] keywordShifts, int generation) {
+            this.keywordShifts = keywordShifts;
+            this.generation = generation;
+            recentPlain = new int[keywordShifts.length];
+            next = 0;
+            slot = 0;
+        }
+
+        /**
+         * Transforms the next byte of the text and remembers its plain text letter for later in the key.
+         *
+         * @param b       the next byte
+         * @param decrypt true to decrypt, false to encrypt
+         * @return the transformed byte
+         */
+        private byte step(byte b, boolean decrypt) {
+            int shift = next < keywordShifts.length ? keywordShifts[slot] : recentPlain[slot];
+            int letter = (b | 0x20) - 'a';
+            int plain = 0;
+            byte output = b;
+
+            if (letter >= 0 && letter < 26) {
+                if (decrypt) {
+                    plain = letter - shift;
+                    if (plain < 0) {
+                        plain += 26;
+                    }
+                    output = (byte) ('A' + plain);
+                } else {
+                    plain = letter;
+                    int encrypted = letter + shift;
+                    if (encrypted >= 26) {
+                        encrypted -= 26;
+                    }
+                    output = (byte) ('A' + encrypted);
+                }
+            }
+
+            recentPlain[slot] = plain;
+            if (++slot == recentPlain.length) {
+                slot = 0;
+            }
+            next++;
+            return output;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package uk.ac.aber.dcs.backend;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Asks a running cipher operation to stop. Operations look at the token between chunks of work, so they stop
+ * shortly after it is cancelled rather than straight away. A cancelled operation throws a
+ * {@link CancellationException}. A token stays cancelled, so a new one is needed for the next operation.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public class CancellationToken {
+    private volatile boolean cancelled;
+
+    /**
+     * Asks every operation using this token to stop. Can be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * returns whether the token has been cancelled.
+     *
+     * @return true if cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Stops the calling operation if the token has been cancelled.
+     *
+     * @throws CancellationException thrown when the token has been cancelled
+     */
+    public void throwIfCancelled() {
+        if (cancelled) {
+            throw new CancellationException("Operation cancelled");
+        }
+    }
+}
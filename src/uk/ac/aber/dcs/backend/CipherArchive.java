@@ -0,0 +1,320 @@
+package uk.ac.aber.dcs.backend;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Packs many encrypted files into a single archive file, so that thousands of small files become a few large
+ * sequential writes. The archive holds the encrypted entries one after another, followed by an index of where each
+ * entry starts and a trailer pointing at the index. Any entry can be found through the index and decrypted on its
+ * own. New entries are appended after the trailer, followed by a new index and trailer, so the archive's existing
+ * index is never overwritten. If packing is cut short, the archive is opened from the last complete trailer.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public class CipherArchive implements Closeable {
+    private static final int MAGIC = 0x43415243;
+    private static final int HEADER_SIZE = 4;
+    private static final int TRAILER_SIZE = 12;
+    // How far back a trailer is looked for at a time when the archive doesn't end with one
+    private static final int SCAN_SIZE = 1 << 16;
+
+    private final CipherEncryptor cipher;
+    private final FileChannel channel;
+    private final Map<String, Entry> index = new LinkedHashMap<>();
+    private long indexOffset;
+
+    /**
+     * Opens an archive, creating an empty one if the file doesn't exist.
+     *
+     * @param file   the archive file
+     * @param cipher the cipher, with its key loaded, used for every entry
+     * @throws IOException thrown when the file cannot be opened or isn't an archive
+     */
+    public CipherArchive(Path file, CipherEncryptor cipher) throws IOException {
+        this.cipher = cipher;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            if (channel.size() == 0) {
+                indexOffset = HEADER_SIZE;
+                channel.write(ByteBuffer.allocate(HEADER_SIZE).putInt(0, MAGIC), 0);
+                writeIndex();
+            } else {
+                readIndex(file);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the trailer and the index it points to. An archive that doesn't end with a complete trailer had its
+     * last pack cut short, so the last complete trailer before the end is used and everything after it, which no
+     * index refers to, is cut off.
+     *
+     * @param file the archive file, for error messages
+     * @throws IOException thrown when the file isn't an archive
+     */
+    private void readIndex(Path file) throws IOException {
+        ByteBuffer header = readFully(ByteBuffer.allocate(HEADER_SIZE), 0);
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a cipher archive");
+        }
+        long size = channel.size();
+        if (readIndexEndingAt(size)) {
+            return;
+        }
+
+        // Looks back through the file for the end of a trailer, a few bytes at a time
+        ByteBuffer scan = ByteBuffer.allocate(SCAN_SIZE + 3);
+        for (long end = size; end > HEADER_SIZE + TRAILER_SIZE; end -= SCAN_SIZE) {
+            long start = Math.max(0, end - SCAN_SIZE - 3);
+            scan.clear().limit((int) (end - start));
+            readFully(scan, start);
+            for (int i = scan.limit() - 4; i >= 0; i--) {
+                long trailerEnd = start + i + 4;
+                if (trailerEnd < end && scan.getInt(i) == MAGIC && readIndexEndingAt(trailerEnd)) {
+                    channel.truncate(trailerEnd);
+                    return;
+                }
+            }
+        }
+        throw new IOException(file + " is not a cipher archive");
+    }
+
+    /**
+     * Reads the index whose trailer ends at the given position, if there is a complete one there.
+     *
+     * @param trailerEnd where the trailer would end
+     * @return true if the index was read
+     * @throws IOException thrown when the archive cannot be read
+     */
+    private boolean readIndexEndingAt(long trailerEnd) throws IOException {
+        if (trailerEnd < HEADER_SIZE + TRAILER_SIZE) {
+            return false;
+        }
+        ByteBuffer trailer = readFully(ByteBuffer.allocate(TRAILER_SIZE), trailerEnd - TRAILER_SIZE);
+        long offset = trailer.getLong(0);
+        long indexSize = trailerEnd - TRAILER_SIZE - offset;
+        if (trailer.getInt(8) != MAGIC || offset < HEADER_SIZE || indexSize < 4 || indexSize > Integer.MAX_VALUE) {
+            return false;
+        }
+
+        ByteBuffer indexBytes = readFully(ByteBuffer.allocate((int) indexSize), offset);
+        Map<String, Entry> entries = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(indexBytes.array()))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                Entry entry = new Entry(in.readLong(), in.readLong());
+                if (entry.offset < HEADER_SIZE || entry.length < 0 || entry.offset + entry.length > offset) {
+                    return false;
+                }
+                entries.put(name, entry);
+            }
+            if (in.available() != 0) {
+                return false;
+            }
+        } catch (IOException e) {
+            // Not a whole index, so not a real trailer
+            return false;
+        }
+        index.clear();
+        index.putAll(entries);
+        indexOffset = offset;
+        return true;
+    }
+
+    /**
+     * Writes the index and trailer after the last entry and cuts off anything left beyond them. The entries are
+     * forced to disk first, so a trailer is never on disk ahead of the entries it points to.
+     *
+     * @throws IOException thrown when the archive cannot be written
+     */
+    private void writeIndex() throws IOException {
+        channel.force(false);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(index.size());
+            for (Map.Entry<String, Entry> entry : index.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().offset);
+                out.writeLong(entry.getValue().length);
+            }
+            out.writeLong(indexOffset);
+            out.writeInt(MAGIC);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        long position = indexOffset;
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+        channel.truncate(position);
+        channel.force(false);
+    }
+
+    /**
+     * Encrypts files and appends them to the archive, named after the files. The files are read and encrypted in
+     * parallel, a few at a time, and written one after another in the order given, after the current trailer. The
+     * new index and trailer are written last, so until then the archive still opens with its old index. An entry
+     * with the same name as an existing one replaces it in the index.
+     *
+     * @param files   the files to add
+     * @param threads number of files encrypted at once
+     * @throws IOException thrown when a file cannot be read or the archive cannot be written
+     */
+    public void append(List<Path> files, int threads) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Deque<Future<byte[]>> encrypting = new ArrayDeque<>();
+        Deque<String> names = new ArrayDeque<>();
+        // The current index and trailer stay where they are until the new ones are written
+        long position = channel.size();
+
+        try {
+            for (Path file : files) {
+                encrypting.add(pool.submit(() -> {
+                    byte[] data = Files.readAllBytes(file);
+                    cipher.encrypt(data, 0, data.length, 0);
+                    return data;
+                }));
+                names.add(file.getFileName().toString());
+                // Keep only a few files in memory at once
+                if (encrypting.size() >= threads * 2) {
+                    position = writeEntry(names.poll(), encrypting.poll().get(), position);
+                }
+            }
+            while (!encrypting.isEmpty()) {
+                position = writeEntry(names.poll(), encrypting.poll().get(), position);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Packing interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Packing failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+            // Everything written so far is kept
+            indexOffset = position;
+            writeIndex();
+        }
+    }
+
+    /**
+     * Writes one encrypted entry at the given position and adds it to the index.
+     *
+     * @param name     entry name
+     * @param data     the encrypted bytes
+     * @param position where to write them
+     * @return position after the entry
+     * @throws IOException thrown when the archive cannot be written
+     */
+    private long writeEntry(String name, byte[] data, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        long end = position;
+        while (buffer.hasRemaining()) {
+            end += channel.write(buffer, end);
+        }
+        index.put(name, new Entry(position, data.length));
+        return end;
+    }
+
+    /**
+     * Reads and decrypts a single entry.
+     *
+     * @param name entry name
+     * @return the decrypted bytes
+     * @throws IOException thrown when there is no such entry or it cannot be read
+     */
+    public byte[] extract(String name) throws IOException {
+        Entry entry = index.get(name);
+        if (entry == null) {
+            throw new IOException("No entry named " + name);
+        }
+        if (entry.length > Integer.MAX_VALUE - 8) {
+            throw new IOException("Entry " + name + " is too large to extract at once");
+        }
+        ByteBuffer buffer = readFully(ByteBuffer.allocate((int) entry.length), entry.offset);
+        cipher.decrypt(buffer.array(), 0, buffer.capacity(), 0);
+        return buffer.array();
+    }
+
+    /**
+     * returns the names of every entry, in the order they were added.
+     *
+     * @return entry names
+     */
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    /**
+     * returns the encrypted size of an entry.
+     *
+     * @param name entry name
+     * @return size in bytes, or -1 if there is no such entry
+     */
+    public long getSize(String name) {
+        Entry entry = index.get(name);
+        return entry == null ? -1 : entry.length;
+    }
+
+    /**
+     * Fills a buffer from the given position of the archive.
+     *
+     * @param buffer   the buffer to fill
+     * @param position where to read from
+     * @return the filled buffer
+     * @throws IOException thrown when the archive ends first
+     */
+    private ByteBuffer readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Archive is truncated");
+            }
+        }
+        return buffer;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Where an entry sits in the archive.
+     */
+    private static class Entry {
+        private final long offset;
+        private final long length;
+
+        private Entry(long offset, long length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
@@ -1,273 +1,1276 @@
-package uk.ac.aber.dcs.backend;
-
-import java.io.*;
-import java.util.Scanner;
-
-/**
- * Contains the common code between cipher classes and stores some information required by the program
- *
- * @author Jamie Gregory [jag73]
- * @version 1.0
- */
-public abstract class CipherEncryptor {
-    private String cipherText;
-    private String rawText;
-    private String preparedText;
-    private String keyLocation;
-    private String rawTextFile;
-    private String cipherTextFile;
-    Scanner read;
-
-    /**
-     * Loads the raw text from a given file and stores it in the rawText variable
-     *
-     * @throws IOException thrown when the program fails to read the supplied file.
-     */
-    public void loadRawText() throws IOException {
-        try (FileReader fr = new FileReader(rawTextFile);
-             BufferedReader br = new BufferedReader(fr);
-             Scanner infile = new Scanner(br)) {
-
-            StringBuilder output = new StringBuilder();
-            //Add the next read word to the stringbuilder
-            while (infile.hasNext()) {
-                output.append(infile.next());
-
-                //If there is another word, add a space between them
-                if (infile.hasNext()) {
-                    output.append(" ");
-                }
-            }
-            rawText = output.toString();
-        }
-
-    }
-
-    /**
-     * Loads the cipher text from a given file and stores it in the cipherText variable
-     *
-     * @throws IOException thrown when the program fails to read the supplied file.
-     */
-    public void loadCipherText() throws IOException {
-        try (FileReader fr = new FileReader(cipherTextFile);
-             BufferedReader br = new BufferedReader(fr);
-             Scanner infile = new Scanner(br)) {
-            StringBuilder output = new StringBuilder();
-
-            //Read the string on the next line
-            while (infile.hasNext()) {
-                output.append(infile.next());
-
-            }
-
-            cipherText = output.toString();
-        }
-
-    }
-
-    /**
-     * Encrypts the chosen text. Overridden by each cipher.
-     *
-     * @param text the string to encrypt
-     * @return the encrypted text
-     */
-    public abstract String encrypt(String text);
-
-    /**
-     * Decrypts the ciphertext variable. Overridden by each cipher.
-     */
-    public abstract void decrypt();
-
-    /**
-     * Loads the key from file. Overridden by each cipher.
-     *
-     * @throws IOException thrown when the program fails to load the file
-     */
-    public abstract void loadKey() throws IOException;
-
-    /**
-     * prints the key of the cipher. Overridden by each cipher
-     */
-    public abstract void printKey();
-
-    /**
-     * returns the raw text of a file
-     *
-     * @return rawText variable
-     */
-    public String getRawText() {
-        return rawText;
-    }
-
-    /**
-     * Writes the key to file. Overridden by each cipher.
-     *
-     * @throws IOException thrown when the program fails to write the file
-     */
-    public abstract void writeKey() throws IOException;
-
-    /**
-     * returns the key of the cipher.
-     *
-     * @return key variable
-     */
-    public String getKey() {
-        return "";
-    }
-
-    /**
-     * Returns the name of the current cipher in use.
-     *
-     * @return cipher name
-     */
-    public abstract String getCipherName();
-
-    /**
-     * sets the key for the current cipher. Overridden by each cipher.
-     */
-    public abstract void setCipherKey();
-
-    /**
-     * sets the location for the raw text file.
-     *
-     * @param file file path
-     */
-    public void setRawTextFile(String file) {
-        rawTextFile = file;
-        prepareText();
-    }
-
-    /**
-     * sets the location for the cipher text file.
-     *
-     * @param file file path
-     */
-    public void setCipherTextFile(String file) {
-        cipherTextFile = file;
-    }
-
-    /**
-     * returns the raw text file location.
-     *
-     * @return file path
-     */
-    public String getRawTextFile() {
-        return rawTextFile;
-    }
-
-    /**
-     * prepares the text for encryption, removes punctuation.
-     */
-    public void prepareText() {
-        String prepared = rawText.toUpperCase();
-        prepared = prepared.replaceAll("([.,!?'’ 123456789])", "");
-
-        preparedText = prepared;
-    }
-
-    /**
-     * returns the prepared text.
-     *
-     * @return prepared text
-     */
-    public String getPreparedText() {
-        return preparedText;
-    }
-
-    /**
-     * returns the cipher text.
-     *
-     * @return cipher text
-     */
-    public String getCipherText() {
-        return cipherText;
-    }
-
-    /**
-     * Saves the cipher text string to a text file.
-     *
-     * @param outPutLocation the desired location for the output text file
-     */
-    public void saveCipherText(String outPutLocation) {
-        try (FileWriter writer = new FileWriter(outPutLocation);
-             BufferedWriter bw = new BufferedWriter(writer);
-             PrintWriter outputFile = new PrintWriter(bw)) {
-            // Writes the cipherText String to file
-            outputFile.println(getCipherText());
-        } catch (IOException e) {
-            System.err.println("File cannot be found");
-        }
-    }
-
-    /**
-     * returns the shift. Overridden by caesar cipher and keyed caesar cipher.
-     *
-     * @return shift
-     */
-    public int getShift() {
-        return -1;
-    }
-
-    /**
-     * sets the shift. Overridden by caesar cipher and keyed caesar cipher
-     *
-     * @param newShift desired shift
-     */
-    public void setShift(int newShift) {
-    }
-
-    public void setRawText(String text) {
-        rawText = text;
-    }
-
-    /**
-     * Sets the file path for the key file
-     *
-     * @param path file path
-     */
-    public void setKeyLocation(String path) {
-        keyLocation = path;
-    }
-
-    /**
-     * returns the file path of the key file.
-     *
-     * @return key path file
-     */
-    public String getKeyLocation() {
-        return keyLocation;
-    }
-
-    /**
-     * sets the key. Overridden by keyed caesar cipher and vigenere cipher
-     *
-     * @param newKey desired key
-     */
-    public void setKey(String newKey) {
-    }
-
-    /**
-     * calculates the new position of the shifted character.
-     *
-     * @param currentPosition the current position of the character
-     * @param shift           the current shift
-     * @return the new character, shifted by the desired amount
-     */
-    public int newPosition(int currentPosition, int shift) {
-        return Math.floorMod((currentPosition + shift), 26);
-    }
-
-    /**
-     * Returns the alphabet variable
-     *
-     * @return alphabet
-     */
-    public String getALPHABET() {
-        return "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
-    }
-
-    public void setCipherText(String text) {
-        cipherText = text;
-    }
-
-}
+package uk.ac.aber.dcs.backend;
+
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Scanner;
+import java.util.concurrent.CancellationException;
+import java.util.stream.IntStream;
+
+/**
+ * Contains the common code between cipher classes and stores some information required by the program
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public abstract class CipherEncryptor {
+    private String cipherText;
+    private String rawText;
+    private String preparedText;
+    private String keyLocation;
+    private String rawTextFile;
+    private String cipherTextFile;
+    private boolean collectStatistics;
+    private TextStatistics preparedStatistics;
+    private TextStatistics cipherStatistics;
+    private ResultCache resultCache;
+    private String rawTextFingerprint;
+    private volatile byte[][][] compiledTables;
+    private ProgressListener progressListener;
+    private CancellationToken cancellationToken;
+    Scanner read;
+
+    /**
+     * Size of the buffer used when streaming text through a cipher.
+     */
+    public static final int STREAM_BUFFER_SIZE = 1 << 16;
+
+    // Batches with less text than this aren't worth splitting between threads
+    private static final int PARALLEL_BATCH_SIZE = 1 << 18;
+    // Reused by each thread for messages of ciphers without tables
+    private static final ThreadLocal<byte[]> BATCH_SCRATCH = ThreadLocal.withInitial(() -> new byte[1024]);
+
+    /**
+     * Loads the raw text from a given file and stores it in the rawText variable. If the same file, unchanged since,
+     * is already in the result cache it isn't read again.
+     *
+     * @throws IOException thrown when the program fails to read the supplied file.
+     */
+    public void loadRawText() throws IOException {
+        File file = new File(rawTextFile);
+        String fingerprint = file.getAbsolutePath() + ':' + file.lastModified() + ':' + file.length();
+        if (resultCache != null) {
+            String cached = resultCache.get("Raw text", fingerprint, "");
+            if (cached != null) {
+                rawText = cached;
+                rawTextFingerprint = fingerprint;
+                preparedText = null;
+                preparedStatistics = null;
+                return;
+            }
+        }
+
+        try (ProgressTracker progress = startProgress("Load raw text", file.length());
+             Reader fr = new InputStreamReader(progress.track(new FileInputStream(rawTextFile)));
+             BufferedReader br = new BufferedReader(fr);
+             Scanner infile = new Scanner(br)) {
+
+            StringBuilder output = new StringBuilder();
+            //Add the next read word to the stringbuilder
+            while (infile.hasNext()) {
+                output.append(infile.next());
+
+                //If there is another word, add a space between them
+                if (infile.hasNext()) {
+                    output.append(" ");
+                }
+            }
+            rawText = output.toString();
+            rawTextFingerprint = fingerprint;
+            preparedText = null;
+            preparedStatistics = null;
+            if (resultCache != null) {
+                resultCache.put("Raw text", fingerprint, "", rawText);
+            }
+            progress.finish();
+        }
+    }
+
+    /**
+     * Loads the cipher text from a given file and stores it in the cipherText variable
+     *
+     * @throws IOException thrown when the program fails to read the supplied file.
+     */
+    public void loadCipherText() throws IOException {
+        try (ProgressTracker progress = startProgress("Load cipher text", new File(cipherTextFile).length());
+             Reader fr = new InputStreamReader(progress.track(new FileInputStream(cipherTextFile)));
+             BufferedReader br = new BufferedReader(fr);
+             Scanner infile = new Scanner(br)) {
+            StringBuilder output = new StringBuilder();
+            TextStatistics.Counter counter = collectStatistics ? new TextStatistics.Counter() : null;
+            String word;
+
+            //Read the string on the next line
+            while (infile.hasNext()) {
+                word = infile.next();
+                output.append(word);
+                if (counter != null) {
+                    for (int i = 0; i < word.length(); i++) {
+                        counter.add(word.charAt(i));
+                    }
+                }
+            }
+
+            cipherText = output.toString();
+            cipherStatistics = counter == null ? null : counter.build();
+            progress.finish();
+        }
+    }
+
+    /**
+     * Encrypts the chosen text. Overridden by each cipher.
+     *
+     * @param text the string to encrypt
+     * @return the encrypted text
+     */
+    public abstract String encrypt(String text);
+
+    /**
+     * Decrypts the ciphertext variable. Overridden by each cipher.
+     */
+    public abstract void decrypt();
+
+    /**
+     * Decrypts the given text and returns the result, leaving the cipher text variable alone.
+     *
+     * @param text the string to decrypt
+     * @return the decrypted text
+     */
+    public String decrypt(String text) {
+        return transform(text, true);
+    }
+
+    /**
+     * Builds the tables used to encrypt or decrypt a letter. Each row maps the 26 letters of the alphabet to their
+     * output letter, and the letter at a position uses row {@code position % rows}. Overridden by each cipher that
+     * substitutes letters through fixed tables; ciphers without them override the transform methods instead.
+     *
+     * @param decrypt true to build the decryption tables
+     * @return substitution tables, or null if the cipher has none
+     */
+    byte[][] compileTables(boolean decrypt) {
+        return null;
+    }
+
+    /**
+     * returns the tables for the current key, building them the first time they are needed after a key change.
+     *
+     * @param decrypt true for the decryption tables
+     * @return substitution tables
+     */
+    byte[][] getTables(boolean decrypt) {
+        byte[][][] tables = compiledTables;
+        if (tables == null) {
+            tables = new byte[][][]{compileTables(false), compileTables(true)};
+            compiledTables = tables;
+        }
+        return tables[decrypt ? 1 : 0];
+    }
+
+    /**
+     * Throws away the compiled tables. Called by each cipher whenever its key or shift changes.
+     */
+    void keyChanged() {
+        compiledTables = null;
+    }
+
+    /**
+     * Whether each letter can be encrypted or decrypted knowing only its position in the text. Ciphers whose key
+     * depends on the text before it must be run from the start, so they can't be read from an arbitrary position.
+     * Overridden by the running key and autokey ciphers.
+     *
+     * @return true if any position can be transformed on its own
+     */
+    public boolean isPositional() {
+        return true;
+    }
+
+    /**
+     * The number of bytes the cipher works on at once. Byte arrays and buffers handed to the cipher must start on a
+     * block boundary and hold whole blocks, apart from the last part of a text. Overridden by the transposition
+     * cipher, which rearranges letters within each block.
+     *
+     * @return block size in bytes
+     */
+    public int getBlockSize() {
+        return 1;
+    }
+
+    /**
+     * returns the buffer size to use when streaming through this cipher - the largest number of whole blocks that
+     * fit in {@link #STREAM_BUFFER_SIZE}, or one block if a block is bigger than that.
+     *
+     * @return stream buffer size in bytes
+     */
+    public int getStreamBufferSize() {
+        int blockSize = getBlockSize();
+        return Math.max(blockSize, STREAM_BUFFER_SIZE / blockSize * blockSize);
+    }
+
+    /**
+     * Runs each letter of a string through the cipher's tables, moving to the next key position without any
+     * division. The result is built as single byte characters, so the only allocations are the output array and
+     * the string made from it.
+     *
+     * @param text    the string to transform
+     * @param decrypt true to decrypt, false to encrypt
+     * @return the transformed text
+     */
+    String transform(String text, boolean decrypt) {
+        if (resultCache == null) {
+            return transformText(text, decrypt);
+        }
+
+        String namespace = getCipherName() + (decrypt ? " decryption" : " encryption");
+        String fingerprint = getKeyFingerprint();
+        String result = resultCache.get(namespace, fingerprint, text);
+        if (result == null) {
+            result = transformText(text, decrypt);
+            resultCache.put(namespace, fingerprint, text, result);
+        }
+        return result;
+    }
+
+    /**
+     * Runs the text through the cipher's tables without looking in the result cache. Overridden by ciphers that
+     * don't use tables.
+     *
+     * @param text    the string to transform
+     * @param decrypt true to decrypt, false to encrypt
+     * @return the transformed text
+     */
+    String transformText(String text, boolean decrypt) {
+        byte[][] tables = getTables(decrypt);
+        byte[] output = new byte[text.length()];
+        int row = 0;
+        int letter;
+        char c;
+        try (ProgressTracker progress = startProgress(decrypt ? "Decrypt" : "Encrypt", output.length)) {
+            for (int start = 0; start < output.length; start += STREAM_BUFFER_SIZE) {
+                int end = Math.min(output.length, start + STREAM_BUFFER_SIZE);
+                for (int i = start; i < end; i++) {
+                    c = text.charAt(i);
+                    letter = (c | 0x20) - 'a';
+                    if (letter >= 0 && letter < 26) {
+                        output[i] = tables[row][letter];
+                    } else if (c <= 0xFF) {
+                        output[i] = (byte) c;
+                    } else {
+                        // Characters outside Latin-1 can't be held in a byte
+                        return transformWide(text, tables, output, i, row, progress);
+                    }
+                    if (++row == tables.length) {
+                        row = 0;
+                    }
+                }
+                progress.advance(end - start);
+            }
+            progress.finish();
+            return new String(output, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * Carries on running each letter of a string through the cipher's tables using a char array, for text that has
+     * characters outside Latin-1.
+     *
+     * @param text     the string to transform
+     * @param tables   the substitution tables
+     * @param done     the bytes already transformed
+     * @param from     index of the first character not yet transformed
+     * @param row      table row for that character
+     * @param progress the progress of the operation
+     * @return the transformed text
+     */
+    private String transformWide(String text, byte[][] tables, byte[] done, int from, int row,
+                                 ProgressTracker progress) {
+        char[] output = text.toCharArray();
+        int letter;
+
+        for (int i = 0; i < from; i++) {
+            output[i] = (char) (done[i] & 0xFF);
+        }
+        // Pick up at the start of the chunk the byte loop was working on
+        int start = from - from % STREAM_BUFFER_SIZE;
+        for (; start < output.length; start += STREAM_BUFFER_SIZE) {
+            int end = Math.min(output.length, start + STREAM_BUFFER_SIZE);
+            for (int i = from; i < end; i++) {
+                letter = (output[i] | 0x20) - 'a';
+                if (letter >= 0 && letter < 26) {
+                    output[i] = (char) tables[row][letter];
+                }
+                if (++row == tables.length) {
+                    row = 0;
+                }
+            }
+            progress.advance(end - start);
+            from = end;
+        }
+        progress.finish();
+        return new String(output);
+    }
+
+    /**
+     * Runs a whole text held in a byte array through the cipher in place, a stream buffer at a time so progress is
+     * reported and cancellation noticed between buffers. Used by ciphers that work on bytes rather than tables.
+     *
+     * @param data    the text, starting at position 0
+     * @param decrypt true to decrypt, false to encrypt
+     */
+    void transformInChunks(byte[] data, boolean decrypt) {
+        TextState text = startText();
+        try (ProgressTracker progress = startProgress(decrypt ? "Decrypt" : "Encrypt", data.length)) {
+            int chunkSize = getStreamBufferSize();
+            for (int from = 0; from < data.length; from += chunkSize) {
+                int length = Math.min(chunkSize, data.length - from);
+                transform(text, data, from, length, decrypt);
+                progress.advance(length);
+            }
+            progress.finish();
+        }
+    }
+
+    /**
+     * Runs a whole string through a cipher that works on bytes in order, using {@link #transformInChunks}. Text
+     * with characters outside Latin-1 is run through a character at a time instead. Those characters aren't
+     * letters, so each is passed on as it is while a byte that isn't a letter moves the cipher on in its place.
+     *
+     * @param text    the string to transform
+     * @param decrypt true to decrypt, false to encrypt
+     * @return the transformed text
+     */
+    String transformTextInChunks(String text, boolean decrypt) {
+        byte[] data = new byte[text.length()];
+        char c;
+        for (int i = 0; i < data.length; i++) {
+            c = text.charAt(i);
+            if (c > 0xFF) {
+                char[] chars = text.toCharArray();
+                byte[] one = new byte[1];
+                TextState state = startText();
+                for (int j = 0; j < chars.length; j++) {
+                    one[0] = chars[j] > 0xFF ? 0 : (byte) chars[j];
+                    transform(state, one, 0, 1, decrypt);
+                    if (chars[j] <= 0xFF) {
+                        chars[j] = (char) (one[0] & 0xFF);
+                    }
+                }
+                return new String(chars);
+            }
+            data[i] = (byte) c;
+        }
+        transformInChunks(data, decrypt);
+        return new String(data, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Starts a text to be transformed a part at a time, in order, with {@link #encrypt(TextState, byte[], int, int)}
+     * or {@link #decrypt(TextState, byte[], int, int)}. Each text needs its own state, but any number can be in
+     * progress at once.
+     *
+     * @return the state of a new text, at position 0
+     */
+    public TextState startText() {
+        return new TextState();
+    }
+
+    /**
+     * Encrypts the next part of a text in place and moves the text on past it.
+     *
+     * @param text   the text, started by this cipher
+     * @param data   the bytes to encrypt
+     * @param offset index of the first byte
+     * @param length number of bytes
+     */
+    public void encrypt(TextState text, byte[] data, int offset, int length) {
+        transform(text, data, offset, length, false);
+    }
+
+    /**
+     * Decrypts the next part of a text in place and moves the text on past it.
+     *
+     * @param text   the text, started by this cipher
+     * @param data   the bytes to decrypt
+     * @param offset index of the first byte
+     * @param length number of bytes
+     */
+    public void decrypt(TextState text, byte[] data, int offset, int length) {
+        transform(text, data, offset, length, true);
+    }
+
+    /**
+     * Runs the next part of a text through the cipher and moves the text on past it. Ciphers that only need the
+     * position use the positional transform, others override this to carry on from the state.
+     *
+     * @param text    the text, started by this cipher
+     * @param data    the bytes to transform
+     * @param offset  index of the first byte
+     * @param length  number of bytes
+     * @param decrypt true to decrypt, false to encrypt
+     */
+    void transform(TextState text, byte[] data, int offset, int length, boolean decrypt) {
+        transform(data, offset, length, text.next, decrypt);
+        text.next += length;
+    }
+
+    /**
+     * Encrypts part of a byte array in place. Letters of either case become upper case cipher letters and any other
+     * byte is left as it is, but still counts towards the position.
+     *
+     * @param data     the bytes to encrypt
+     * @param offset   index of the first byte
+     * @param length   number of bytes
+     * @param position position of the first byte within the whole text
+     */
+    public void encrypt(byte[] data, int offset, int length, long position) {
+        transform(data, offset, length, position, false);
+    }
+
+    /**
+     * Decrypts part of a byte array in place.
+     *
+     * @param data     the bytes to decrypt
+     * @param offset   index of the first byte
+     * @param length   number of bytes
+     * @param position position of the first byte within the whole text
+     */
+    public void decrypt(byte[] data, int offset, int length, long position) {
+        transform(data, offset, length, position, true);
+    }
+
+    /**
+     * Runs each letter in part of a byte array through the cipher's tables.
+     *
+     * @param data     the bytes to transform
+     * @param offset   index of the first byte
+     * @param length   number of bytes
+     * @param position position of the first byte within the whole text
+     * @param decrypt  true to decrypt, false to encrypt
+     */
+    void transform(byte[] data, int offset, int length, long position, boolean decrypt) {
+        byte[][] tables = getTables(decrypt);
+        int row = (int) (position % tables.length);
+        int letter;
+
+        for (int i = offset, end = offset + length; i < end; i++) {
+            // Folds lower case onto upper case, anything that isn't a letter falls outside 0-25
+            letter = (data[i] | 0x20) - 'a';
+            if (letter >= 0 && letter < 26) {
+                data[i] = tables[row][letter];
+            }
+            if (++row == tables.length) {
+                row = 0;
+            }
+        }
+    }
+
+    /**
+     * Encrypts the remaining bytes of one buffer into another, starting at the beginning of the text.
+     *
+     * @param src the bytes to encrypt
+     * @param dst where the encrypted bytes are written, may be src itself
+     */
+    public void encrypt(ByteBuffer src, ByteBuffer dst) {
+        transform(src, dst, 0, false);
+    }
+
+    /**
+     * Encrypts the remaining bytes of one buffer into another. Both buffers are advanced past the bytes encrypted.
+     * Works on direct and heap buffers alike without copying, and in place when src and dst are the same buffer.
+     *
+     * @param src      the bytes to encrypt
+     * @param dst      where the encrypted bytes are written, may be src itself
+     * @param position position of the first byte within the whole text
+     */
+    public void encrypt(ByteBuffer src, ByteBuffer dst, long position) {
+        transform(src, dst, position, false);
+    }
+
+    /**
+     * Decrypts the remaining bytes of one buffer into another, starting at the beginning of the text.
+     *
+     * @param src the bytes to decrypt
+     * @param dst where the decrypted bytes are written, may be src itself
+     */
+    public void decrypt(ByteBuffer src, ByteBuffer dst) {
+        transform(src, dst, 0, true);
+    }
+
+    /**
+     * Decrypts the remaining bytes of one buffer into another. Both buffers are advanced past the bytes decrypted.
+     *
+     * @param src      the bytes to decrypt
+     * @param dst      where the decrypted bytes are written, may be src itself
+     * @param position position of the first byte within the whole text
+     */
+    public void decrypt(ByteBuffer src, ByteBuffer dst, long position) {
+        transform(src, dst, position, true);
+    }
+
+    /**
+     * Runs each letter remaining in a buffer through the cipher's tables, using absolute reads and writes so
+     * nothing is copied onto the heap.
+     *
+     * @param src      the buffer to read
+     * @param dst      the buffer to write
+     * @param position position of the first byte within the whole text
+     * @param decrypt  true to decrypt, false to encrypt
+     */
+    void transform(ByteBuffer src, ByteBuffer dst, long position, boolean decrypt) {
+        int length = src.remaining();
+        int from = src.position();
+        int to = dst.position();
+        if (dst.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+
+        if (src == dst && src.hasArray()) {
+            transform(src.array(), src.arrayOffset() + from, length, position, decrypt);
+        } else {
+            byte[][] tables = getTables(decrypt);
+            int row = (int) (position % tables.length);
+            int letter;
+            byte b;
+
+            for (int i = 0; i < length; i++) {
+                b = src.get(from + i);
+                letter = (b | 0x20) - 'a';
+                dst.put(to + i, letter >= 0 && letter < 26 ? tables[row][letter] : b);
+                if (++row == tables.length) {
+                    row = 0;
+                }
+            }
+        }
+        src.position(from + length);
+        dst.position(to + length);
+    }
+
+    /**
+     * Encrypts everything read from a stream and writes it to another, one buffer at a time.
+     *
+     * @param in  the plain text
+     * @param out where the cipher text is written
+     * @return number of bytes encrypted
+     * @throws IOException thrown when either stream fails
+     */
+    public long encrypt(InputStream in, OutputStream out) throws IOException {
+        return transform(in, out, false);
+    }
+
+    /**
+     * Decrypts everything read from a stream and writes it to another, one buffer at a time.
+     *
+     * @param in  the cipher text
+     * @param out where the plain text is written
+     * @return number of bytes decrypted
+     * @throws IOException thrown when either stream fails
+     */
+    public long decrypt(InputStream in, OutputStream out) throws IOException {
+        return transform(in, out, true);
+    }
+
+    /**
+     * Streams the input through the cipher using a single buffer, so memory use does not grow with the input.
+     *
+     * @param in      the stream to read
+     * @param out     the stream to write
+     * @param decrypt true to decrypt, false to encrypt
+     * @return number of bytes transformed
+     * @throws IOException thrown when either stream fails
+     */
+    private long transform(InputStream in, OutputStream out, boolean decrypt) throws IOException {
+        byte[] buffer = new byte[getStreamBufferSize()];
+        TextState text = startText();
+        long position = 0;
+        int read;
+        try (ProgressTracker progress = startProgress(decrypt ? "Decrypt stream" : "Encrypt stream",
+                ProgressTracker.lengthOf(in))) {
+            while ((read = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+                transform(text, buffer, 0, read, decrypt);
+                out.write(buffer, 0, read);
+                position += read;
+                progress.read(read);
+                progress.wrote(read);
+                progress.advance(read);
+            }
+            out.flush();
+            progress.finish();
+            return position;
+        }
+    }
+
+    /**
+     * Encrypts every message in a batch, each from the start of the key, as if each were encrypted on its own.
+     * Large batches are split between threads.
+     *
+     * @param batch the messages
+     * @return the encrypted messages, laid out the same way
+     */
+    public MessageBatch encrypt(MessageBatch batch) {
+        return transform(batch, false);
+    }
+
+    /**
+     * Decrypts every message in a batch, each from the start of the key.
+     *
+     * @param batch the messages
+     * @return the decrypted messages, laid out the same way
+     */
+    public MessageBatch decrypt(MessageBatch batch) {
+        return transform(batch, true);
+    }
+
+    /**
+     * Runs a batch through the cipher a group of whole messages at a time. The results go straight into one output
+     * array, so nothing is allocated per message. Ciphers with tables use the tables taken when the batch starts,
+     * so a key change part way through doesn't mix keys within a batch. Other ciphers run each message through a
+     * byte buffer kept by each thread.
+     *
+     * @param batch   the messages
+     * @param decrypt true to decrypt, false to encrypt
+     * @return the transformed messages
+     */
+    private MessageBatch transform(MessageBatch batch, boolean decrypt) {
+        char[] text = batch.getText();
+        int[] offsets = batch.getOffsets();
+        char[] output = new char[batch.getTotalLength()];
+        byte[][] tables = isPositional() && getBlockSize() == 1 ? getTables(decrypt) : null;
+
+        // Groups of about a stream buffer of text, so threads and progress checks aren't per message
+        int[] groups = new int[batch.size() + 1];
+        int groupCount = 0;
+        for (int message = 0, groupStart = 0; message < batch.size(); message++) {
+            if (offsets[message + 1] - offsets[groupStart] >= STREAM_BUFFER_SIZE || message + 1 == batch.size()) {
+                groupStart = message + 1;
+                groups[++groupCount] = groupStart;
+            }
+        }
+
+        try (ProgressTracker progress = startProgress(decrypt ? "Decrypt batch" : "Encrypt batch", output.length)) {
+            IntStream range = IntStream.range(0, groupCount);
+            if (output.length >= PARALLEL_BATCH_SIZE) {
+                range = range.parallel();
+            }
+            range.forEach(group -> {
+                for (int message = groups[group]; message < groups[group + 1]; message++) {
+                    if (tables != null) {
+                        transform(text, output, offsets[message], offsets[message + 1], tables);
+                    } else {
+                        transform(text, output, offsets[message], offsets[message + 1], decrypt);
+                    }
+                }
+                progress.advance(offsets[groups[group + 1]] - offsets[groups[group]]);
+            });
+            progress.finish();
+            return new MessageBatch(output, offsets);
+        }
+    }
+
+    /**
+     * Runs one message of a batch through the cipher's tables, from the first key position.
+     *
+     * @param text   the batch's text
+     * @param output where the result is written, at the same place
+     * @param start  index of the message's first character
+     * @param end    index after its last character
+     * @param tables the substitution tables
+     */
+    private static void transform(char[] text, char[] output, int start, int end, byte[][] tables) {
+        int row = 0;
+        int letter;
+        char c;
+
+        for (int i = start; i < end; i++) {
+            c = text[i];
+            letter = (c | 0x20) - 'a';
+            output[i] = letter >= 0 && letter < 26 ? (char) tables[row][letter] : c;
+            if (++row == tables.length) {
+                row = 0;
+            }
+        }
+    }
+
+    /**
+     * Runs a whole text held in a byte array through the cipher in place, the same way a string would be. Overridden
+     * by ciphers whose byte path splits a text into blocks but whose strings are transformed whole.
+     *
+     * @param data    the text, starting at index 0
+     * @param length  length of the text
+     * @param decrypt true to decrypt, false to encrypt
+     */
+    void transformWhole(byte[] data, int length, boolean decrypt) {
+        transform(data, 0, length, 0, decrypt);
+    }
+
+    /**
+     * Runs one message of a batch through a cipher without tables, copying it into this thread's scratch buffer
+     * and transforming it there from position 0.
+     *
+     * @param text    the batch's text
+     * @param output  where the result is written, at the same place
+     * @param start   index of the message's first character
+     * @param end     index after its last character
+     * @param decrypt true to decrypt, false to encrypt
+     */
+    private void transform(char[] text, char[] output, int start, int end, boolean decrypt) {
+        int length = end - start;
+        byte[] scratch = BATCH_SCRATCH.get();
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+            BATCH_SCRATCH.set(scratch);
+        }
+        for (int i = 0; i < length; i++) {
+            char c = text[start + i];
+            if (c > 0xFF) {
+                // Characters outside Latin-1 can't be held in a byte
+                transformText(new String(text, start, length), decrypt).getChars(0, length, output, start);
+                return;
+            }
+            scratch[i] = (byte) c;
+        }
+        transformWhole(scratch, length, decrypt);
+        for (int i = 0; i < length; i++) {
+            output[start + i] = (char) (scratch[i] & 0xFF);
+        }
+    }
+
+    /**
+     * Loads the key from file. Overridden by each cipher.
+     *
+     * @throws IOException thrown when the program fails to load the file
+     */
+    public abstract void loadKey() throws IOException;
+
+    /**
+     * Loads the key like {@link #loadKey()}, but throws when it can't be, rather than reporting it and carrying on
+     * with whatever key the cipher had. For callers that must not run without the saved key.
+     *
+     * @throws IOException thrown when the key cannot be read or isn't a key this cipher can use
+     */
+    public void loadKeyStrictly() throws IOException {
+        // loadKey reports its own errors, so the key is opened once first to see if it is there
+        try (Reader reader = openKeyReader()) {
+            reader.read();
+        }
+        loadKey();
+        if (getKey() == null) {
+            throw new IOException("The saved " + getCipherName() + " key at " + keyLocation + " can't be used");
+        }
+    }
+
+    /**
+     * prints the key of the cipher. Overridden by each cipher
+     */
+    public abstract void printKey();
+
+    /**
+     * returns the raw text of a file
+     *
+     * @return rawText variable
+     */
+    public String getRawText() {
+        return rawText;
+    }
+
+    /**
+     * Writes the key to file. Overridden by each cipher.
+     *
+     * @throws IOException thrown when the program fails to write the file
+     */
+    public abstract void writeKey() throws IOException;
+
+    /**
+     * returns the key of the cipher.
+     *
+     * @return key variable
+     */
+    public String getKey() {
+        return "";
+    }
+
+    /**
+     * Returns the name of the current cipher in use.
+     *
+     * @return cipher name
+     */
+    public abstract String getCipherName();
+
+    /**
+     * Creates an empty cipher from its name, as returned by {@link #getCipherName()}, so a cipher can be rebuilt in
+     * another process from its name, shift and key.
+     *
+     * @param cipherName the cipher name
+     * @return a new cipher with no key loaded, or null if there is no cipher with that name
+     */
+    public static CipherEncryptor forName(String cipherName) {
+        switch (cipherName) {
+            case "Caesar Cipher":
+                return new CaesarCipher();
+            case "Keyed Caesar Cipher":
+                return new KeyedCaesarCipher();
+            case "Vigenere Cipher":
+                return new VigenereCipher();
+            case "Running Key Cipher":
+                return new RunningKeyCipher();
+            case "Autokey Cipher":
+                return new AutokeyCipher();
+            case "Columnar Transposition Cipher":
+                return new ColumnarTranspositionCipher();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * sets the key for the current cipher. Overridden by each cipher.
+     */
+    public abstract void setCipherKey();
+
+    /**
+     * sets the location for the raw text file.
+     *
+     * @param file file path
+     */
+    public void setRawTextFile(String file) {
+        rawTextFile = file;
+    }
+
+    /**
+     * sets the location for the cipher text file.
+     *
+     * @param file file path
+     */
+    public void setCipherTextFile(String file) {
+        cipherTextFile = file;
+    }
+
+    /**
+     * returns the raw text file location.
+     *
+     * @return file path
+     */
+    public String getRawTextFile() {
+        return rawTextFile;
+    }
+
+    /**
+     * prepares the text for encryption, removes punctuation. Letter statistics are counted in the same pass when
+     * they are being collected.
+     */
+    public void prepareText() {
+        if (resultCache != null && rawTextFingerprint != null) {
+            String cached = resultCache.get("Prepared text", rawTextFingerprint, "");
+            if (cached != null) {
+                preparedText = cached;
+                preparedStatistics = null;
+                return;
+            }
+        }
+
+        String upperCase = rawText.toUpperCase();
+        StringBuilder prepared = new StringBuilder(upperCase.length());
+        TextStatistics.Counter counter = collectStatistics ? new TextStatistics.Counter() : null;
+        char c;
+        try (ProgressTracker progress = startProgress("Prepare text", upperCase.length())) {
+            for (int start = 0; start < upperCase.length(); start += STREAM_BUFFER_SIZE) {
+                int end = Math.min(upperCase.length(), start + STREAM_BUFFER_SIZE);
+                for (int i = start; i < end; i++) {
+                    c = upperCase.charAt(i);
+                    if (!isPunctuation(c)) {
+                        prepared.append(c);
+                        if (counter != null) {
+                            counter.add(c);
+                        }
+                    }
+                }
+                progress.advance(end - start);
+            }
+            progress.finish();
+        }
+
+        preparedText = prepared.toString();
+        preparedStatistics = counter == null ? null : counter.build();
+        if (resultCache != null && rawTextFingerprint != null) {
+            resultCache.put("Prepared text", rawTextFingerprint, "", preparedText);
+        }
+    }
+
+    /**
+     * Checks whether a character is removed when preparing text.
+     *
+     * @param c the character
+     * @return true if it is punctuation, a space or a digit from 1 to 9
+     */
+    static boolean isPunctuation(char c) {
+        switch (c) {
+            case '.', ',', '!', '?', '\'', '’', ' ', '1', '2', '3', '4', '5', '6', '7', '8', '9':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Turns on or off counting letter statistics while loading cipher text and preparing text, which saves a
+     * second pass over the text when the statistics are wanted.
+     *
+     * @param collect true to count while loading and preparing
+     */
+    public void setCollectStatistics(boolean collect) {
+        collectStatistics = collect;
+    }
+
+    /**
+     * returns the letter statistics for the prepared text, counting them now if they weren't collected while
+     * preparing.
+     *
+     * @return prepared text statistics
+     */
+    public TextStatistics getPreparedStatistics() {
+        if (preparedStatistics == null) {
+            String prepared = getPreparedText();
+            if (preparedStatistics == null) {
+                preparedStatistics = TextStatistics.of(prepared == null ? "" : prepared);
+            }
+        }
+        return preparedStatistics;
+    }
+
+    /**
+     * returns the letter statistics for the cipher text, counting them now if they weren't collected while
+     * loading.
+     *
+     * @return cipher text statistics
+     */
+    public TextStatistics getCipherStatistics() {
+        if (cipherStatistics == null) {
+            cipherStatistics = TextStatistics.of(cipherText == null ? "" : cipherText);
+        }
+        return cipherStatistics;
+    }
+
+    /**
+     * returns the prepared text, preparing it first if the raw text has changed since it was last prepared.
+     *
+     * @return prepared text
+     */
+    public String getPreparedText() {
+        if (preparedText == null && rawText != null) {
+            prepareText();
+        }
+        return preparedText;
+    }
+
+    /**
+     * returns the prepared text without preparing it - the prepared text if it has already been built, otherwise a
+     * view that prepares the raw text as it is read.
+     *
+     * @return prepared text or a view of it
+     */
+    public CharSequence getPreparedView() {
+        if (preparedText != null || rawText == null) {
+            return preparedText;
+        }
+        return new PreparedTextView(rawText);
+    }
+
+    /**
+     * returns a view of some text encrypted, transforming each character only when it is read. Ciphers that can't
+     * transform a position on its own encrypt the whole text straight away instead.
+     *
+     * @param text the text
+     * @return the encrypted text or a view of it
+     */
+    public CharSequence encryptedView(CharSequence text) {
+        return view(text, false);
+    }
+
+    /**
+     * returns a view of some text decrypted, transforming each character only when it is read. Ciphers that can't
+     * transform a position on its own decrypt the whole text straight away instead.
+     *
+     * @param text the text
+     * @return the decrypted text or a view of it
+     */
+    public CharSequence decryptedView(CharSequence text) {
+        return view(text, true);
+    }
+
+    /**
+     * Makes a view using the cipher's tables, if it has tables that work one position at a time.
+     *
+     * @param text    the text
+     * @param decrypt true to decrypt, false to encrypt
+     * @return the transformed text or a view of it
+     */
+    private CharSequence view(CharSequence text, boolean decrypt) {
+        if (!isPositional() || getBlockSize() != 1) {
+            return transform(text.toString(), decrypt);
+        }
+        return new CipherTextView(text, getTables(decrypt), 0, -1);
+    }
+
+    /**
+     * returns the cipher text.
+     *
+     * @return cipher text
+     */
+    public String getCipherText() {
+        return cipherText;
+    }
+
+    /**
+     * Saves the cipher text string to a text file.
+     *
+     * @param outPutLocation the desired location for the output text file
+     */
+    public void saveCipherText(String outPutLocation) {
+        String text = String.valueOf(getCipherText());
+        try (ProgressTracker progress = startProgress("Save cipher text", text.length());
+             FileWriter writer = new FileWriter(outPutLocation);
+             BufferedWriter bw = new BufferedWriter(writer);
+             PrintWriter outputFile = new PrintWriter(bw)) {
+            // Writes the cipherText String to file a buffer at a time
+            for (int start = 0; start < text.length(); start += STREAM_BUFFER_SIZE) {
+                int length = Math.min(STREAM_BUFFER_SIZE, text.length() - start);
+                outputFile.write(text, start, length);
+                progress.wrote(length);
+                progress.advance(length);
+            }
+            outputFile.println();
+            progress.finish();
+        } catch (IOException e) {
+            System.err.println("File cannot be found");
+        } catch (CancellationException e) {
+            // Don't leave half a file behind
+            new File(outPutLocation).delete();
+            throw e;
+        }
+    }
+
+    /**
+     * returns the shift. Overridden by caesar cipher and keyed caesar cipher.
+     *
+     * @return shift
+     */
+    public int getShift() {
+        return -1;
+    }
+
+    /**
+     * sets the shift. Overridden by caesar cipher and keyed caesar cipher
+     *
+     * @param newShift desired shift
+     */
+    public void setShift(int newShift) {
+    }
+
+    public void setRawText(String text) {
+        rawText = text;
+        rawTextFingerprint = null;
+        preparedText = null;
+        preparedStatistics = null;
+    }
+
+    /**
+     * Takes on another cipher's input - its raw text file, raw text and, if it has been built, its prepared text and
+     * statistics. Nothing is copied, both ciphers hold the same strings.
+     *
+     * @param other the cipher to share input with
+     */
+    void shareInput(CipherEncryptor other) {
+        // Keep our own prepared text if it was made from the very same raw text and the other cipher has none
+        if (rawText != other.rawText || other.preparedText != null) {
+            preparedText = other.preparedText;
+            preparedStatistics = other.preparedStatistics;
+        }
+        rawTextFile = other.rawTextFile;
+        rawText = other.rawText;
+        rawTextFingerprint = other.rawTextFingerprint;
+    }
+
+    /**
+     * Sets the cache used to skip reloading files and repeating encryptions. Can be shared between ciphers.
+     *
+     * @param cache the result cache, or null for no caching
+     */
+    public void setResultCache(ResultCache cache) {
+        resultCache = cache;
+    }
+
+    /**
+     * returns the result cache in use.
+     *
+     * @return result cache, or null if there isn't one
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Sets the listener told about the progress of loading, preparing, encrypting, decrypting and saving text.
+     *
+     * @param listener the listener, or null for no reports
+     */
+    public void setProgressListener(ProgressListener listener) {
+        progressListener = listener;
+    }
+
+    /**
+     * returns the progress listener in use.
+     *
+     * @return progress listener, or null if there isn't one
+     */
+    public ProgressListener getProgressListener() {
+        return progressListener;
+    }
+
+    /**
+     * Sets the token that can stop loading, preparing, encrypting, decrypting and saving text part way through.
+     * Stopped operations throw a {@link CancellationException} and leave the cipher's text as it was.
+     *
+     * @param token the token, or null to never stop
+     */
+    public void setCancellationToken(CancellationToken token) {
+        cancellationToken = token;
+    }
+
+    /**
+     * returns the cancellation token in use.
+     *
+     * @return cancellation token, or null if there isn't one
+     */
+    public CancellationToken getCancellationToken() {
+        return cancellationToken;
+    }
+
+    /**
+     * Starts following an operation with this cipher's listener and token.
+     *
+     * @param operation what the operation does, as shown in flight recordings
+     * @param total     bytes or characters in the operation, or -1 if not known
+     * @return the operation's progress
+     */
+    ProgressTracker startProgress(String operation, long total) {
+        return new ProgressTracker(progressListener, cancellationToken, getCipherName(), operation, total);
+    }
+
+    /**
+     * Returns a fingerprint of the current key and shift, which tells apart results made with different keys.
+     *
+     * @return key fingerprint
+     */
+    public String getKeyFingerprint() {
+        return getShift() + ":" + getKey();
+    }
+
+    /**
+     * Sets the file path for the key file. A location of the form {@code storeFile#keyId} loads and writes the key
+     * with that id in a {@link KeyStore} instead, unless the whole location names an existing file, the part before
+     * the {@code #} is a file that isn't a key store, or the id has a path separator in it.
+     *
+     * @param path file path
+     */
+    public void setKeyLocation(String path) {
+        keyLocation = path;
+    }
+
+    /**
+     * Opens the key for reading, either from the key file or from a key store.
+     *
+     * @return a reader over the key
+     * @throws IOException thrown when the key cannot be found
+     */
+    Reader openKeyReader() throws IOException {
+        String[] stored = storedKeyLocation();
+        if (stored == null) {
+            return new FileReader(keyLocation);
+        }
+        String key = KeyStore.open(stored[0]).get(getCipherName(), stored[1]);
+        if (key == null) {
+            throw new FileNotFoundException("No " + getCipherName() + " key with id " + stored[1]);
+        }
+        return new StringReader(key);
+    }
+
+    /**
+     * Saves the key, either to the key file or to a key store. Any failure to write it is thrown to the caller,
+     * so a key is never reported as saved when it wasn't.
+     *
+     * @param key the key text, as it is read back by loadKey
+     * @throws IOException thrown when the key cannot be written
+     */
+    void saveKey(String key) throws IOException {
+        String[] stored = storedKeyLocation();
+        if (stored == null) {
+            try (Writer writer = new FileWriter(keyLocation)) {
+                writer.write(key);
+            }
+        } else {
+            KeyStore.open(stored[0]).put(getCipherName(), stored[1], key);
+        }
+    }
+
+    /**
+     * Splits the key location into a key store and key id, if it refers to a key in a store.
+     *
+     * @return the store path and key id, or null if the location is a plain key file
+     */
+    private String[] storedKeyLocation() {
+        int split = keyLocation.lastIndexOf('#');
+        if (split < 0 || new File(keyLocation).exists()) {
+            return null;
+        }
+        String store = keyLocation.substring(0, split);
+        String keyId = keyLocation.substring(split + 1);
+        if (keyId.isEmpty() || keyId.indexOf('/') >= 0 || keyId.indexOf(File.separatorChar) >= 0
+                || (new File(store).exists() && !KeyStore.isKeyStore(store))) {
+            return null;
+        }
+        return new String[]{store, keyId};
+    }
+
+    /**
+     * returns the file path of the key file.
+     *
+     * @return key path file
+     */
+    public String getKeyLocation() {
+        return keyLocation;
+    }
+
+    /**
+     * sets the key. Overridden by keyed caesar cipher and vigenere cipher
+     *
+     * @param newKey desired key
+     */
+    public void setKey(String newKey) {
+    }
+
+    /**
+     * calculates the new position of the shifted character.
+     *
+     * @param currentPosition the current position of the character
+     * @param shift           the current shift
+     * @return the new character, shifted by the desired amount
+     */
+    public int newPosition(int currentPosition, int shift) {
+        return Math.floorMod((currentPosition + shift), 26);
+    }
+
+    /**
+     * Returns the alphabet variable
+     *
+     * @return alphabet
+     */
+    public String getALPHABET() {
+        return "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    }
+
+    public void setCipherText(String text) {
+        cipherText = text;
+        cipherStatistics = null;
+    }
+
+}
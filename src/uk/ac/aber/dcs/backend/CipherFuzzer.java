@@ -0,0 +1,681 @@
+package uk.ac.aber.dcs.backend;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks every way of running the caesar, keyed caesar and vigenere ciphers against a frozen copy of each cipher's
+ * first character at a time version, using random keys, shifts, texts, chunk boundaries and thread counts. Each way
+ * must give exactly the plain version's output when encrypting and decrypting, and decrypting its own encryption
+ * must give back the input with its letters in upper case. The prepared text view is checked the same way, read out
+ * of order from its first character, against punctuation removed a character at a time. The first failure is shrunk
+ * to the smallest case that still fails before it is reported. A seed makes every run repeatable.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public class CipherFuzzer {
+    private static final String[] CIPHERS = {"Caesar Cipher", "Keyed Caesar Cipher", "Vigenere Cipher"};
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    // Letters, and the characters either side of them that the case folding in the tables must not mistake for one
+    private static final String LETTERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    private static final String OTHERS = " .,!?'0123456789\n@[`{\u00c0\u00c1\u00de\u00e0\u00e1\u00fe\u00ff";
+    private static final String WIDE = "\u0100\u0141\u0161\u20ac\u4e00";
+    private static final int MAX_SHRINK_CHECKS = 20_000;
+
+    private final Random random;
+    private final int maxLength;
+    private final int maxThreads;
+    private ExecutorService pool;
+    private int shrinkChecks;
+
+    /**
+     * Creates a fuzzer.
+     *
+     * @param seed       seed for every random choice, so a failing run can be repeated
+     * @param maxLength  longest text tried
+     * @param maxThreads most threads used by the parallel way
+     */
+    public CipherFuzzer(long seed, int maxLength, int maxThreads) {
+        if (maxLength < 1 || maxThreads < 1) {
+            throw new IllegalArgumentException("Length and thread count must be at least 1");
+        }
+        random = new Random(seed);
+        this.maxLength = maxLength;
+        this.maxThreads = maxThreads;
+    }
+
+    /**
+     * Tries a number of random cases against every way of running the ciphers.
+     *
+     * @param cases number of cases
+     * @return the smallest failing case found, or null if every case passed
+     */
+    public Failure run(int cases) {
+        pool = Executors.newFixedThreadPool(maxThreads);
+        try {
+            for (int i = 0; i < cases; i++) {
+                Case c = randomCase();
+                for (Engine engine : Engine.values()) {
+                    if (check(c, engine) != null) {
+                        return shrink(c, engine);
+                    }
+                }
+            }
+            return null;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Makes a random case. Most texts are short, so boundaries and keys wrap often, but some are long enough to
+     * span several stream buffers.
+     *
+     * @return the case
+     */
+    private Case randomCase() {
+        String cipherName = CIPHERS[random.nextInt(CIPHERS.length)];
+        int shift = random.nextInt(26);
+        StringBuilder key = new StringBuilder();
+        for (int i = 1 + random.nextInt(12); i > 0; i--) {
+            key.append((char) ('A' + random.nextInt(26)));
+        }
+
+        int length = random.nextInt(Math.min(64, maxLength) + 1);
+        if (random.nextInt(8) == 0) {
+            length = random.nextInt(maxLength + 1);
+        }
+        boolean wide = random.nextInt(10) == 0;
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            int pick = random.nextInt(100);
+            if (wide && pick == 0) {
+                text.append(WIDE.charAt(random.nextInt(WIDE.length())));
+            } else if (pick < 20) {
+                text.append(OTHERS.charAt(random.nextInt(OTHERS.length())));
+            } else {
+                text.append(LETTERS.charAt(random.nextInt(LETTERS.length())));
+            }
+        }
+        return new Case(cipherName, shift, key.toString(), text.toString(), random.nextLong(),
+                1 + random.nextInt(maxThreads));
+    }
+
+    /**
+     * Checks one way of running a cipher against the plain version for one case.
+     *
+     * @param c      the case
+     * @param engine the way of running the cipher
+     * @return what went wrong, or null if it passed or the way doesn't apply to the case
+     */
+    private String check(Case c, Engine engine) {
+        try {
+            CipherEncryptor cipher = c.cipher();
+            for (boolean decrypt : new boolean[]{false, true}) {
+                String expected = engine.expected(c, c.text, decrypt);
+                String actual = engine.run(this, cipher, c, c.text, decrypt);
+                if (actual == null) {
+                    return null;
+                }
+                String difference = compare(expected, actual);
+                if (difference != null) {
+                    return (decrypt ? "decryption " : "encryption ") + difference;
+                }
+            }
+            String encrypted = engine.run(this, cipher, c, c.text, false);
+            String difference = compare(engine.expectedRoundTrip(c.text), engine.run(this, cipher, c, encrypted, true));
+            return difference == null ? null : "round trip " + difference;
+        } catch (RuntimeException e) {
+            return "threw " + e;
+        }
+    }
+
+    /**
+     * Describes the first difference between the expected and actual output.
+     *
+     * @param expected the plain version's output
+     * @param actual   the output checked
+     * @return the difference, or null if they match
+     */
+    private static String compare(String expected, String actual) {
+        if (expected.equals(actual)) {
+            return null;
+        }
+        int at = 0;
+        while (at < expected.length() && at < actual.length() && expected.charAt(at) == actual.charAt(at)) {
+            at++;
+        }
+        return String.format("differs at %d: expected %s, got %s", at,
+                at < expected.length() ? describe(expected.charAt(at)) : "end",
+                at < actual.length() ? describe(actual.charAt(at)) : "end");
+    }
+
+    /**
+     * Shrinks a failing case, keeping each smaller text, shorter key, smaller shift or fewer threads that still
+     * fails, until nothing more can be taken away.
+     *
+     * @param c      the failing case
+     * @param engine the way that failed
+     * @return the smallest failure found
+     */
+    private Failure shrink(Case c, Engine engine) {
+        shrinkChecks = 0;
+        Case smaller;
+        while ((smaller = smallerFailure(c, engine)) != null) {
+            c = smaller;
+        }
+        return new Failure(c, engine.name().toLowerCase().replace('_', ' '), check(c, engine));
+    }
+
+    /**
+     * Looks for a smaller case that still fails - first without part of the text, from halves down to single
+     * characters, then with a character made plainer, a shorter key, a smaller shift or one thread.
+     *
+     * @param c      the failing case
+     * @param engine the way that failed
+     * @return a smaller failing case, or null if there isn't one or the shrinking has gone on long enough
+     */
+    private Case smallerFailure(Case c, Engine engine) {
+        String text = c.text;
+        for (int size = text.length() / 2; size >= 1; size /= 2) {
+            for (int from = 0; from + size <= text.length() && shrinkChecks < MAX_SHRINK_CHECKS; from += size) {
+                Case candidate = c.withText(text.substring(0, from) + text.substring(from + size));
+                if (fails(candidate, engine)) {
+                    return candidate;
+                }
+            }
+        }
+        for (int i = 0; i < text.length() && shrinkChecks < MAX_SHRINK_CHECKS; i++) {
+            if (text.charAt(i) != 'A') {
+                Case candidate = c.withText(text.substring(0, i) + 'A' + text.substring(i + 1));
+                if (fails(candidate, engine)) {
+                    return candidate;
+                }
+            }
+        }
+        for (int i = 0; c.key.length() > 1 && i < c.key.length(); i++) {
+            Case candidate = c.withKey(c.key.substring(0, i) + c.key.substring(i + 1));
+            if (fails(candidate, engine)) {
+                return candidate;
+            }
+        }
+        if (c.shift > 0 && fails(c.withShift(0), engine)) {
+            return c.withShift(0);
+        }
+        if (c.shift > 1 && fails(c.withShift(c.shift / 2), engine)) {
+            return c.withShift(c.shift / 2);
+        }
+        if (c.threads > 1 && fails(c.withThreads(1), engine)) {
+            return c.withThreads(1);
+        }
+        return null;
+    }
+
+    /**
+     * Checks whether a smaller case still fails, counting the check towards the shrinking limit.
+     *
+     * @param candidate the smaller case
+     * @param engine    the way that failed
+     * @return true if it fails, false if it passes or the limit has been reached
+     */
+    private boolean fails(Case candidate, Engine engine) {
+        return shrinkChecks++ < MAX_SHRINK_CHECKS && check(candidate, engine) != null;
+    }
+
+    /**
+     * Runs text through a cipher one character at a time, the way the ciphers first did it, using only the case's
+     * key and shift. Kept apart from the cipher classes, so a change to them can't change what they are checked
+     * against. The first versions only took upper case A to Z, so lower case letters are put in upper case first
+     * and everything else is left alone, but still uses up a position of the key.
+     *
+     * @param c       the case, whose cipher, key and shift are used
+     * @param text    the text
+     * @param decrypt true to decrypt, false to encrypt
+     * @return the transformed text
+     */
+    private static String reference(Case c, String text, boolean decrypt) {
+        String keyAlphabet = keyedAlphabet(c.key);
+        StringBuilder output = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char letter = text.charAt(i);
+            if (letter >= 'a' && letter <= 'z') {
+                letter -= 32;
+            } else if (letter < 'A' || letter > 'Z') {
+                output.append(letter);
+                continue;
+            }
+            switch (c.cipherName) {
+                case "Caesar Cipher" -> output.append(ALPHABET.charAt(
+                        Math.floorMod(ALPHABET.indexOf(letter) + (decrypt ? -c.shift : c.shift), 26)));
+                case "Keyed Caesar Cipher" -> output.append(decrypt
+                        ? ALPHABET.charAt(Math.floorMod(keyAlphabet.indexOf(letter) - c.shift, 26))
+                        : keyAlphabet.charAt(Math.floorMod(ALPHABET.indexOf(letter) + c.shift, 26)));
+                default -> {
+                    int keyLetter = c.key.charAt(i % c.key.length()) - 'A';
+                    int position = decrypt ? ((letter - 'A') - keyLetter) % 26 : ((letter - 'A') + keyLetter) % 26;
+                    output.append(ALPHABET.charAt(Math.floorMod(position, 26)));
+                }
+            }
+        }
+        return output.toString();
+    }
+
+    /**
+     * Builds the keyed caesar cipher's alphabet - the key's letters without repeats, then the rest of the alphabet.
+     *
+     * @param key the key
+     * @return the key alphabet
+     */
+    private static String keyedAlphabet(String key) {
+        Set<Character> letters = new LinkedHashSet<>();
+        for (char letter : (key.toUpperCase() + ALPHABET).toCharArray()) {
+            letters.add(letter);
+        }
+        StringBuilder output = new StringBuilder(letters.size());
+        for (Character letter : letters) {
+            output.append(letter);
+        }
+        return output.toString();
+    }
+
+    /**
+     * Removes punctuation and upper cases letters a character at a time, which is what the prepared text should be.
+     *
+     * @param text the raw text
+     * @return the prepared text
+     */
+    private static String prepare(String text) {
+        StringBuilder prepared = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            if (!CipherEncryptor.isPunctuation(text.charAt(i))) {
+                prepared.append(Character.toUpperCase(text.charAt(i)));
+            }
+        }
+        return prepared.toString();
+    }
+
+    /**
+     * Puts ASCII letters in upper case, which is what encrypting then decrypting should give.
+     *
+     * @param text the text
+     * @return the text with its letters in upper case
+     */
+    private static String foldLetters(String text) {
+        char[] chars = text.toCharArray();
+        for (int i = 0; i < chars.length; i++) {
+            if (chars[i] >= 'a' && chars[i] <= 'z') {
+                chars[i] -= 32;
+            }
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Splits a length into chunks at random points, the same points every time for the same case and length.
+     *
+     * @param c      the case
+     * @param length the length to split
+     * @return the start of every chunk, followed by the length
+     */
+    private static int[] boundaries(Case c, int length) {
+        Random chunks = new Random(c.chunkSeed);
+        int maxChunk = 1 + chunks.nextInt(Math.max(1, length));
+        List<Integer> points = new ArrayList<>();
+        points.add(0);
+        for (int at = 0; at < length; ) {
+            // Empty chunks are allowed, the ciphers must cope with them
+            at = Math.min(length, at + chunks.nextInt(maxChunk + 1));
+            points.add(at);
+        }
+        if (points.size() == 1) {
+            points.add(length);
+        }
+        return points.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Checks whether every character fits in a byte, which the byte based ways need.
+     *
+     * @param text the text
+     * @return true if the text is Latin-1
+     */
+    private static boolean isLatin1(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) > 0xFF) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Shows a character so that spaces, control characters and characters outside ASCII can be told apart.
+     *
+     * @param c the character
+     * @return the character and its code
+     */
+    private static String describe(char c) {
+        return c >= ' ' && c < 0x7F ? String.format("'%c'", c) : String.format("U+%04X", (int) c);
+    }
+
+    /**
+     * The ways of running a cipher that must all agree with the plain version.
+     */
+    private enum Engine {
+        STRING {
+            @Override
+            String run(CipherFuzzer fuzzer, CipherEncryptor cipher, Case c, String text, boolean decrypt) {
+                return cipher.transformText(text, decrypt);
+            }
+        },
+        CACHED_STRING {
+            @Override
+            String run(CipherFuzzer fuzzer, CipherEncryptor cipher, Case c, String text, boolean decrypt) {
+                cipher.setResultCache(new ResultCache(16, 1 << 20));
+                String first = cipher.transform(text, decrypt);
+                String second = cipher.transform(text, decrypt);
+                cipher.setResultCache(null);
+                return first.equals(second) ? second : "cache changed the result: " + second;
+            }
+        },
+        BYTE_CHUNKS {
+            @Override
+            String run(CipherFuzzer fuzzer, CipherEncryptor cipher, Case c, String text, boolean decrypt) {
+                if (!isLatin1(text)) {
+                    return null;
+                }
+                byte[] data = text.getBytes(StandardCharsets.ISO_8859_1);
+                int[] points = boundaries(c, data.length);
+                for (int i = 0; i + 1 < points.length; i++) {
+                    cipher.transform(data, points[i], points[i + 1] - points[i], points[i], decrypt);
+                }
+                return new String(data, StandardCharsets.ISO_8859_1);
+            }
+        },
+        HEAP_BUFFER {
+            @Override
+            String run(CipherFuzzer fuzzer, CipherEncryptor cipher, Case c, String text, boolean decrypt) {
+                return isLatin1(text) ? buffers(cipher, c, text, decrypt, false) : null;
+            }
+        },
+        DIRECT_BUFFER {
+            @Override
+            String run(CipherFuzzer fuzzer, CipherEncryptor cipher, Case c, String text, boolean decrypt) {
+                return isLatin1(text) ? buffers(cipher, c, text, decrypt, true) : null;
+            }
+        },
+        STREAM {
+            @Override
+            String run(CipherFuzzer fuzzer, CipherEncryptor cipher, Case c, String text, boolean decrypt) {
+                if (!isLatin1(text)) {
+                    return null;
+                }
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try {
+                    ByteArrayInputStream in = new ByteArrayInputStream(text.getBytes(StandardCharsets.ISO_8859_1));
+                    if (decrypt) {
+                        cipher.decrypt(in, out);
+                    } else {
+                        cipher.encrypt(in, out);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return out.toString(StandardCharsets.ISO_8859_1);
+            }
+        },
+        PIPELINE {
+            @Override
+            String run(CipherFuzzer fuzzer, CipherEncryptor cipher, Case c, String text, boolean decrypt) {
+                if (!isLatin1(text)) {
+                    return null;
+                }
+                Random sizes = new Random(c.chunkSeed);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try {
+                    // Small buffers put block ends everywhere, but on long texts they only slow the run down
+                    int bufferSize = 1 + sizes.nextInt(Math.max(64, text.length() / 8));
+                    new CipherPipeline(cipher, decrypt, 2 + sizes.nextInt(3), bufferSize)
+                            .run(new ByteArrayInputStream(text.getBytes(StandardCharsets.ISO_8859_1)), out);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return out.toString(StandardCharsets.ISO_8859_1);
+            }
+        },
+        VIEW {
+            @Override
+            String run(CipherFuzzer fuzzer, CipherEncryptor cipher, Case c, String text, boolean decrypt) {
+                CharSequence view = decrypt ? cipher.decryptedView(text) : cipher.encryptedView(text);
+                StringBuilder output = new StringBuilder(text.length());
+                int[] points = boundaries(c, text.length());
+                for (int i = 0; i + 1 < points.length; i++) {
+                    output.append(view.subSequence(points[i], points[i + 1]));
+                }
+                return output.toString();
+            }
+        },
+        PREPARED_VIEW {
+            @Override
+            String run(CipherFuzzer fuzzer, CipherEncryptor cipher, Case c, String text, boolean decrypt) {
+                PreparedTextView view = new PreparedTextView(text);
+                int[] points = boundaries(c, view.length());
+                // The even chunks are read first, starting from the first character, then the view goes back for
+                // the odd ones
+                String[] chunks = new String[points.length - 1];
+                for (int first = 0; first < 2; first++) {
+                    for (int i = first; i + 1 < points.length; i += 2) {
+                        chunks[i] = view.subSequence(points[i], points[i + 1]).toString();
+                    }
+                }
+                return cipher.transformText(String.join("", chunks), decrypt);
+            }
+
+            @Override
+            String expected(Case c, String text, boolean decrypt) {
+                return reference(c, prepare(text), decrypt);
+            }
+
+            @Override
+            String expectedRoundTrip(String text) {
+                return prepare(text);
+            }
+        },
+        PARALLEL {
+            @Override
+            String run(CipherFuzzer fuzzer, CipherEncryptor cipher, Case c, String text, boolean decrypt) {
+                if (!isLatin1(text)) {
+                    return null;
+                }
+                byte[] data = text.getBytes(StandardCharsets.ISO_8859_1);
+                int[] points = boundaries(c, data.length);
+                List<Future<?>> parts = new ArrayList<>();
+                for (int thread = 0; thread < c.threads; thread++) {
+                    int first = thread;
+                    parts.add(fuzzer.pool.submit(() -> {
+                        // Each thread takes every nth chunk, so neighbouring chunks run at the same time
+                        for (int i = first; i + 1 < points.length; i += c.threads) {
+                            cipher.transform(data, points[i], points[i + 1] - points[i], points[i], decrypt);
+                        }
+                    }));
+                }
+                try {
+                    for (Future<?> part : parts) {
+                        part.get();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted", e);
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+                return new String(data, StandardCharsets.ISO_8859_1);
+            }
+        };
+
+        /**
+         * Runs text through the cipher this way.
+         *
+         * @param fuzzer  the fuzzer, for its thread pool
+         * @param cipher  the cipher
+         * @param c       the case, for its chunk boundaries and thread count
+         * @param text    the text
+         * @param decrypt true to decrypt, false to encrypt
+         * @return the transformed text, or null if this way can't take the text
+         */
+        abstract String run(CipherFuzzer fuzzer, CipherEncryptor cipher, Case c, String text, boolean decrypt);
+
+        /**
+         * returns what this way should give for the text, the plain version's output unless the way changes the
+         * text before the cipher sees it.
+         *
+         * @param c       the case
+         * @param text    the text
+         * @param decrypt true to decrypt, false to encrypt
+         * @return the expected output
+         */
+        String expected(Case c, String text, boolean decrypt) {
+            return reference(c, text, decrypt);
+        }
+
+        /**
+         * returns what decrypting this way's encryption of the text should give.
+         *
+         * @param text the text
+         * @return the expected output
+         */
+        String expectedRoundTrip(String text) {
+            return foldLetters(text);
+        }
+
+        /**
+         * Runs text through the cipher a buffer slice at a time, from one buffer into another.
+         *
+         * @param cipher  the cipher
+         * @param c       the case, for its chunk boundaries
+         * @param text    the text
+         * @param decrypt true to decrypt, false to encrypt
+         * @param direct  true to use direct buffers
+         * @return the transformed text
+         */
+        static String buffers(CipherEncryptor cipher, Case c, String text, boolean decrypt, boolean direct) {
+            byte[] data = text.getBytes(StandardCharsets.ISO_8859_1);
+            ByteBuffer src = direct ? ByteBuffer.allocateDirect(data.length) : ByteBuffer.allocate(data.length);
+            ByteBuffer dst = direct ? ByteBuffer.allocateDirect(data.length) : ByteBuffer.allocate(data.length);
+            src.put(data);
+            int[] points = boundaries(c, data.length);
+            for (int i = 0; i + 1 < points.length; i++) {
+                src.limit(points[i + 1]).position(points[i]);
+                dst.position(points[i]);
+                cipher.transform(src, dst, points[i], decrypt);
+            }
+            dst.clear().get(data);
+            return new String(data, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * One random case - a cipher with its key and shift, a text, and how to split it up.
+     */
+    private static final class Case {
+        private final String cipherName;
+        private final int shift;
+        private final String key;
+        private final String text;
+        private final long chunkSeed;
+        private final int threads;
+
+        private Case(String cipherName, int shift, String key, String text, long chunkSeed, int threads) {
+            this.cipherName = cipherName;
+            this.shift = shift;
+            this.key = key;
+            this.text = text;
+            this.chunkSeed = chunkSeed;
+            this.threads = threads;
+        }
+
+        private CipherEncryptor cipher() {
+            CipherEncryptor cipher = CipherEncryptor.forName(cipherName);
+            cipher.setShift(shift);
+            cipher.setKey(key);
+            return cipher;
+        }
+
+        private Case withText(String newText) {
+            return new Case(cipherName, shift, key, newText, chunkSeed, threads);
+        }
+
+        private Case withKey(String newKey) {
+            return new Case(cipherName, shift, newKey, text, chunkSeed, threads);
+        }
+
+        private Case withShift(int newShift) {
+            return new Case(cipherName, newShift, key, text, chunkSeed, threads);
+        }
+
+        private Case withThreads(int newThreads) {
+            return new Case(cipherName, shift, key, text, chunkSeed, newThreads);
+        }
+    }
+
+    /**
+     * The smallest failing case found, and what went wrong with it.
+     */
+    public static final class Failure {
+        private final String cipherName;
+        private final int shift;
+        private final String key;
+        private final String text;
+        private final int threads;
+        private final String engine;
+        private final String problem;
+
+        private Failure(Case c, String engine, String problem) {
+            cipherName = c.cipherName;
+            shift = c.shift;
+            key = c.key;
+            text = c.text;
+            threads = c.threads;
+            this.engine = engine;
+            this.problem = problem;
+        }
+
+        /**
+         * returns the way of running the cipher that failed.
+         *
+         * @return engine name
+         */
+        public String getEngine() {
+            return engine;
+        }
+
+        /**
+         * returns the text that makes it fail.
+         *
+         * @return failing text
+         */
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s, %s: %s%n  shift %d, key %s, %d threads, text (%d chars) \"%s\"", cipherName,
+                    engine, problem, shift, key, threads, text.length(), text);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package uk.ac.aber.dcs.backend;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event covering one whole cipher operation, such as loading, preparing, encrypting or saving
+ * a text. The recording gives each event its duration and thread, so a recording shows which stage a slow job spent
+ * its time in. Events are made once per operation by {@link ProgressTracker}, never per character, and cost
+ * next to nothing when nothing is recording.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+@Name("uk.ac.aber.dcs.CipherOperation")
+@Label("Cipher Operation")
+@Category({"Cipher", "Backend"})
+@Description("A load, prepare, encrypt, decrypt or save done by a cipher")
+@StackTrace(false)
+class CipherOperationEvent extends jdk.jfr.Event {
+    @Label("Cipher")
+    String cipherName;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Input Size")
+    @Description("Bytes or characters the operation expected to work through, -1 if not known")
+    @DataAmount
+    long inputSize;
+
+    @Label("Processed")
+    @Description("Bytes or characters the operation worked through")
+    @DataAmount
+    long processed;
+
+    @Label("Bytes Read")
+    @DataAmount
+    long bytesRead;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytesWritten;
+
+    @Label("Outcome")
+    String outcome;
+}
@@ -0,0 +1,258 @@
+package uk.ac.aber.dcs.backend;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Streams text through a cipher with reading, encrypting and writing each on their own thread, so the disk keeps
+ * working while the cipher runs and the other way round. The stages pass a fixed set of buffers between them
+ * through bounded queues, so memory use doesn't depend on the input size. The time each stage spends working is
+ * recorded, which shows whether a job is held up by I/O or by the cipher.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public class CipherPipeline {
+    private final CipherEncryptor cipher;
+    private final boolean decrypt;
+    private final int bufferCount;
+    private final int bufferSize;
+
+    private volatile IOException readError;
+    private volatile RuntimeException transformError;
+    private long readNanos;
+    private long transformNanos;
+    private long writeNanos;
+    private long wallNanos;
+
+    /**
+     * Creates a pipeline.
+     *
+     * @param cipher      the cipher, with its key loaded
+     * @param decrypt     true to decrypt, false to encrypt
+     * @param bufferCount number of buffers shared by the stages, 3 lets every stage work at once
+     * @param bufferSize  size of each buffer in bytes, rounded up to whole cipher blocks
+     */
+    public CipherPipeline(CipherEncryptor cipher, boolean decrypt, int bufferCount, int bufferSize) {
+        if (bufferCount < 2 || bufferSize < 1) {
+            throw new IllegalArgumentException("A pipeline needs at least two buffers");
+        }
+        this.cipher = cipher;
+        this.decrypt = decrypt;
+        this.bufferCount = bufferCount;
+        // Every buffer but the last must hold whole blocks
+        int blockSize = cipher.getBlockSize();
+        this.bufferSize = (bufferSize + blockSize - 1) / blockSize * blockSize;
+    }
+
+    /**
+     * Creates a triple buffered pipeline using the cipher's stream buffer size.
+     *
+     * @param cipher  the cipher, with its key loaded
+     * @param decrypt true to decrypt, false to encrypt
+     */
+    public CipherPipeline(CipherEncryptor cipher, boolean decrypt) {
+        this(cipher, decrypt, 3, cipher.getStreamBufferSize());
+    }
+
+    /**
+     * Reads the whole input, runs it through the cipher and writes it out. The reader and cipher stages run on
+     * their own threads and the writer runs on the calling thread. The writer reports each buffer to the cipher's
+     * progress listener and stops every stage if the cipher's cancellation token is cancelled.
+     *
+     * @param in  the stream to read
+     * @param out the stream to write
+     * @return number of bytes transformed
+     * @throws IOException thrown when either stream fails
+     */
+    public long run(InputStream in, OutputStream out) throws IOException {
+        BlockingQueue<Chunk> free = new ArrayBlockingQueue<>(bufferCount);
+        BlockingQueue<Chunk> read = new ArrayBlockingQueue<>(bufferCount);
+        BlockingQueue<Chunk> transformed = new ArrayBlockingQueue<>(bufferCount);
+        for (int i = 0; i < bufferCount; i++) {
+            free.add(new Chunk(bufferSize));
+        }
+        readError = null;
+        transformError = null;
+        readNanos = 0;
+        transformNanos = 0;
+        writeNanos = 0;
+
+        // Buffers reach the cipher in order, so one text's state carries on from each to the next
+        TextState text = cipher.startText();
+        ProgressTracker progress = cipher.startProgress(decrypt ? "Pipeline decrypt" : "Pipeline encrypt",
+                ProgressTracker.lengthOf(in));
+        long start = System.nanoTime();
+        Thread reader = new Thread(() -> readStage(in, free, read), "cipher-pipeline-reader");
+        Thread transformer = new Thread(() -> transformStage(text, read, transformed), "cipher-pipeline-transformer");
+        reader.start();
+        transformer.start();
+
+        long total = 0;
+        try {
+            Chunk chunk;
+            while ((chunk = transformed.take()).length > 0) {
+                long busy = System.nanoTime();
+                out.write(chunk.data, 0, chunk.length);
+                writeNanos += System.nanoTime() - busy;
+                total += chunk.length;
+                progress.read(chunk.length);
+                progress.wrote(chunk.length);
+                progress.advance(chunk.length);
+                free.put(chunk);
+            }
+            out.flush();
+            if (readError != null || transformError != null) {
+                // A stage stopped early, so the reader may be waiting for buffers that will never come back
+                reader.interrupt();
+                transformer.interrupt();
+            }
+            reader.join();
+            transformer.join();
+            if (readError != null) {
+                throw readError;
+            }
+            if (transformError != null) {
+                throw transformError;
+            }
+            progress.finish();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Pipeline interrupted", e);
+        } finally {
+            // Records the operation as failed unless it finished or was cancelled
+            progress.close();
+            reader.interrupt();
+            transformer.interrupt();
+            wallNanos = System.nanoTime() - start;
+        }
+        return total;
+    }
+
+    /**
+     * Fills free buffers from the input and queues them for the cipher. An empty buffer marks the end of the input.
+     *
+     * @param in   the stream to read
+     * @param free buffers ready to be filled
+     * @param read buffers waiting for the cipher
+     */
+    private void readStage(InputStream in, BlockingQueue<Chunk> free, BlockingQueue<Chunk> read) {
+        try {
+            Chunk chunk;
+            int length;
+            do {
+                chunk = free.take();
+                long busy = System.nanoTime();
+                try {
+                    chunk.length = in.readNBytes(chunk.data, 0, chunk.data.length);
+                } catch (IOException e) {
+                    readError = e;
+                    chunk.length = 0;
+                }
+                readNanos += System.nanoTime() - busy;
+                length = chunk.length;
+                read.put(chunk);
+            } while (length > 0);
+        } catch (InterruptedException e) {
+            // The writer has given up, nothing left to do
+        }
+    }
+
+    /**
+     * Runs each filled buffer through the cipher in place and passes it on to the writer.
+     *
+     * @param text        the state of the text being transformed
+     * @param read        buffers waiting for the cipher
+     * @param transformed buffers waiting to be written
+     */
+    private void transformStage(TextState text, BlockingQueue<Chunk> read, BlockingQueue<Chunk> transformed) {
+        try {
+            Chunk chunk;
+            int length;
+            do {
+                chunk = read.take();
+                long busy = System.nanoTime();
+                try {
+                    cipher.transform(text, chunk.data, 0, chunk.length, decrypt);
+                } catch (RuntimeException e) {
+                    // Stop the writer rather than leave it waiting for buffers that will never come
+                    transformError = e;
+                    chunk.length = 0;
+                }
+                transformNanos += System.nanoTime() - busy;
+                // Once passed on, the buffer can be written and refilled, so its length must be read first
+                length = chunk.length;
+                transformed.put(chunk);
+            } while (length > 0);
+        } catch (InterruptedException e) {
+            // The writer has given up, nothing left to do
+        }
+    }
+
+    /**
+     * returns the share of the last run's time the reader spent reading.
+     *
+     * @return utilisation from 0 to 1
+     */
+    public double getReadUtilisation() {
+        return utilisation(readNanos);
+    }
+
+    /**
+     * returns the share of the last run's time the cipher spent working.
+     *
+     * @return utilisation from 0 to 1
+     */
+    public double getTransformUtilisation() {
+        return utilisation(transformNanos);
+    }
+
+    /**
+     * returns the share of the last run's time the writer spent writing.
+     *
+     * @return utilisation from 0 to 1
+     */
+    public double getWriteUtilisation() {
+        return utilisation(writeNanos);
+    }
+
+    /**
+     * Works out a stage's busy time as a share of the whole run.
+     *
+     * @param busyNanos time the stage spent working
+     * @return utilisation from 0 to 1
+     */
+    private double utilisation(long busyNanos) {
+        return wallNanos == 0 ? 0 : (double) busyNanos / wallNanos;
+    }
+
+    /**
+     * Describes the last run, naming the busiest stage.
+     *
+     * @return summary of stage utilisation
+     */
+    @Override
+    public String toString() {
+        double readShare = getReadUtilisation();
+        double transformShare = getTransformUtilisation();
+        double writeShare = getWriteUtilisation();
+        String bound = transformShare >= Math.max(readShare, writeShare) ? "CPU-bound" : "I/O-bound";
+        return String.format("read %.0f%%, cipher %.0f%%, write %.0f%% of %.2fs (%s)", readShare * 100,
+                transformShare * 100, writeShare * 100, wallNanos / 1e9, bound);
+    }
+
+    /**
+     * A buffer passed between the stages.
+     */
+    private static class Chunk {
+        private final byte[] data;
+        private int length;
+
+        private Chunk(int size) {
+            data = new byte[size];
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package uk.ac.aber.dcs.backend;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * Encrypts or decrypts a stream of messages as part of a reactive pipeline. Messages are requested from upstream in
+ * batches, each batch is transformed on the executor, and the results are published downstream. Publishing blocks
+ * while downstream subscribers are behind, and no more messages are requested until a batch has been published, so
+ * only a bounded number of messages are ever held. If a batch fails, upstream is cancelled and downstream is given
+ * the error straight away.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public class CipherProcessor extends SubmissionPublisher<String> implements Flow.Processor<String, String> {
+    private final CipherEncryptor cipher;
+    private final boolean decrypt;
+    private final int batchSize;
+    private final int maxBatches;
+    private final boolean ordered;
+    private final Executor executor;
+
+    private Flow.Subscription subscription;
+    private List<String> batch;
+    private CompletableFuture<Void> published = CompletableFuture.completedFuture(null);
+
+    /**
+     * Creates a processor. The cipher's key should not be changed while messages are flowing through it.
+     *
+     * @param cipher     the cipher to use
+     * @param decrypt    true to decrypt messages, false to encrypt them
+     * @param batchSize  number of messages transformed together
+     * @param maxBatches number of batches that may be in progress at once
+     * @param ordered    true to publish results in the order messages arrived, false to publish each batch as soon as
+     *                   it is done
+     * @param executor   runs the transformations and delivers results, so it needs more than one thread
+     */
+    public CipherProcessor(CipherEncryptor cipher, boolean decrypt, int batchSize, int maxBatches, boolean ordered,
+                           Executor executor) {
+        super(executor, Flow.defaultBufferSize());
+        if (batchSize < 1 || maxBatches < 1) {
+            throw new IllegalArgumentException("Batch size and batch count must be at least 1");
+        }
+        this.cipher = cipher;
+        this.decrypt = decrypt;
+        this.batchSize = batchSize;
+        this.maxBatches = maxBatches;
+        this.ordered = ordered;
+        this.executor = executor;
+        batch = new ArrayList<>(batchSize);
+    }
+
+    /**
+     * Requests enough messages to fill every batch that may be in progress.
+     *
+     * @param subscription the upstream subscription
+     */
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request((long) batchSize * maxBatches);
+    }
+
+    /**
+     * Adds a message to the current batch, sending the batch off once it is full.
+     *
+     * @param message the message to transform
+     */
+    @Override
+    public void onNext(String message) {
+        if (isClosed()) {
+            // A batch failed, the rest of the messages are dropped
+            return;
+        }
+        batch.add(message);
+        if (batch.size() == batchSize) {
+            dispatch();
+        }
+    }
+
+    /**
+     * Closes the processor with the upstream error once every batch already sent off has been published.
+     *
+     * @param error the upstream error
+     */
+    @Override
+    public void onError(Throwable error) {
+        published.whenComplete((done, e) -> closeExceptionally(error));
+    }
+
+    /**
+     * Sends off the last partial batch and closes the processor once everything has been published.
+     */
+    @Override
+    public void onComplete() {
+        if (!batch.isEmpty()) {
+            dispatch();
+        }
+        published.whenComplete((done, e) -> {
+            if (e == null) {
+                close();
+            } else {
+                closeExceptionally(e);
+            }
+        });
+    }
+
+    /**
+     * Transforms the current batch on the executor and starts a new one. In ordered mode the results wait for every
+     * earlier batch to be published first.
+     */
+    private void dispatch() {
+        List<String> messages = batch;
+        batch = new ArrayList<>(batchSize);
+        CompletableFuture<List<String>> work = CompletableFuture.supplyAsync(() -> transform(messages), executor);
+        work.whenComplete((results, e) -> {
+            if (e != null) {
+                // A failed batch is never published, so nothing else would ask upstream for more or tell downstream
+                subscription.cancel();
+                closeExceptionally(e instanceof CompletionException ? e.getCause() : e);
+            }
+        });
+
+        if (ordered) {
+            published = published.thenCombine(work, (done, results) -> {
+                publish(results);
+                return null;
+            });
+        } else {
+            published = CompletableFuture.allOf(published, work.thenAccept(this::publish));
+        }
+    }
+
+    /**
+     * Runs each message in a batch through the cipher.
+     *
+     * @param messages the batch
+     * @return transformed messages
+     */
+    private List<String> transform(List<String> messages) {
+        List<String> results = new ArrayList<>(messages.size());
+        for (String message : messages) {
+            results.add(decrypt ? cipher.decrypt(message) : cipher.encrypt(message));
+        }
+        return results;
+    }
+
+    /**
+     * Publishes a finished batch downstream and asks upstream for as many messages again.
+     *
+     * @param results the transformed batch
+     */
+    private void publish(List<String> results) {
+        synchronized (this) {
+            if (isClosed()) {
+                return;
+            }
+            for (String result : results) {
+                submit(result);
+            }
+            subscription.request(results.size());
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package uk.ac.aber.dcs.backend;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps one instance of every cipher for as long as the user is working, so switching between ciphers doesn't
+ * rebuild them, reload their keys or read and prepare the input again. Every cipher shares the same loaded and
+ * prepared input, and each cipher's encrypted text is only worked out again when the input or its key has changed
+ * since it was last encrypted.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public class CipherSession {
+    private final ResultCache resultCache;
+    private final Map<String, CipherEncryptor> ciphers = new LinkedHashMap<>();
+    // The input and key each cipher's cipher text was made from
+    private final Map<String, String> outputStates = new HashMap<>();
+    private CipherEncryptor active;
+    private CipherEncryptor inputSource;
+    private long inputVersion;
+
+    /**
+     * Creates an empty session. Ciphers are made the first time they are used.
+     *
+     * @param resultCache the cache shared by every cipher, or null for none
+     */
+    public CipherSession(ResultCache resultCache) {
+        this.resultCache = resultCache;
+    }
+
+    /**
+     * Makes a cipher the active one, creating it and loading its key the first time it is used. The cipher is given
+     * the session's input, so it never has to load or prepare the input itself.
+     *
+     * @param cipherName the cipher name, as returned by {@link CipherEncryptor#getCipherName()}
+     * @return the cipher
+     * @throws IOException thrown when the cipher's key cannot be loaded
+     */
+    public synchronized CipherEncryptor activate(String cipherName) throws IOException {
+        CipherEncryptor cipher = ciphers.get(cipherName);
+        if (cipher == null) {
+            cipher = CipherEncryptor.forName(cipherName);
+            if (cipher == null) {
+                throw new IllegalArgumentException("No cipher called " + cipherName);
+            }
+            cipher.setResultCache(resultCache);
+            cipher.setCollectStatistics(true);
+            cipher.loadKey();
+            ciphers.put(cipherName, cipher);
+        }
+        // The cipher being left may have prepared the input since it was shared with it
+        if (active != null && inputSource != null) {
+            inputSource = active;
+        }
+        if (inputSource != null && cipher != inputSource) {
+            cipher.shareInput(inputSource);
+        }
+        active = cipher;
+        return cipher;
+    }
+
+    /**
+     * returns the active cipher.
+     *
+     * @return active cipher, or null if none has been activated
+     */
+    public synchronized CipherEncryptor getActive() {
+        return active;
+    }
+
+    /**
+     * returns every cipher made so far.
+     *
+     * @return the session's ciphers
+     */
+    public synchronized Collection<CipherEncryptor> getCiphers() {
+        return Collections.unmodifiableCollection(ciphers.values());
+    }
+
+    /**
+     * Records that a cipher has loaded new input, which every other cipher will now share. Every cipher's encrypted
+     * text is now out of date.
+     *
+     * @param cipher the cipher that loaded the input
+     */
+    public synchronized void inputLoaded(CipherEncryptor cipher) {
+        inputSource = cipher;
+        inputVersion++;
+        if (active != null && active != cipher) {
+            active.shareInput(cipher);
+        }
+    }
+
+    /**
+     * Records that a cipher's cipher text was loaded from a file rather than made from the input.
+     *
+     * @param cipher the cipher
+     */
+    public synchronized void cipherTextLoaded(CipherEncryptor cipher) {
+        outputStates.remove(cipher.getCipherName());
+    }
+
+    /**
+     * Checks whether a cipher's cipher text was made from the current input with its current key.
+     *
+     * @param cipher the cipher
+     * @return true if the cipher text is up to date
+     */
+    public synchronized boolean isOutputCurrent(CipherEncryptor cipher) {
+        return outputState(cipher).equals(outputStates.get(cipher.getCipherName()));
+    }
+
+    /**
+     * Encrypts the prepared input with a cipher and stores it as the cipher's cipher text, unless the cipher text
+     * is already up to date. The encryption itself runs without holding the session, so it can be done in the
+     * background.
+     *
+     * @param cipher the cipher
+     * @return the cipher text
+     */
+    public String encrypt(CipherEncryptor cipher) {
+        String state;
+        synchronized (this) {
+            state = outputState(cipher);
+            if (state.equals(outputStates.get(cipher.getCipherName()))) {
+                return cipher.getCipherText();
+            }
+        }
+        String result = cipher.encrypt(cipher.getPreparedText());
+        cipher.setCipherText(result);
+        synchronized (this) {
+            outputStates.put(cipher.getCipherName(), state);
+        }
+        return result;
+    }
+
+    /**
+     * Describes the input and key a cipher text would be made from now.
+     *
+     * @param cipher the cipher
+     * @return output state
+     */
+    private String outputState(CipherEncryptor cipher) {
+        return inputVersion + "/" + cipher.getKeyFingerprint();
+    }
+}
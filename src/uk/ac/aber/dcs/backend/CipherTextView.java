@@ -0,0 +1,89 @@
+package uk.ac.aber.dcs.backend;
+
+/**
+ * A view of text as it would look encrypted or decrypted, working out each character from the cipher's tables only
+ * when it is asked for. Nothing is copied, so showing or checking the start of a large text only costs as much as
+ * the start. Only ciphers that can transform any position on its own have a view, see
+ * {@link CipherEncryptor#isPositional()}. The tables are taken when the view is made, so later key changes don't
+ * affect it.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public final class CipherTextView implements CharSequence {
+    private final CharSequence source;
+    private final byte[][] tables;
+    private final int start;
+    private final int end;
+
+    /**
+     * Creates a view of part of a text.
+     *
+     * @param source the text
+     * @param tables the cipher's tables for encrypting or decrypting
+     * @param start  index of the first character, also its position in the text
+     * @param end    index after the last character, or -1 for the end of the text, so a text whose length isn't
+     *               known yet doesn't have to be measured
+     */
+    CipherTextView(CharSequence source, byte[][] tables, int start, int end) {
+        this.source = source;
+        this.tables = tables;
+        this.start = start;
+        this.end = end;
+    }
+
+    @Override
+    public int length() {
+        return (end < 0 ? source.length() : end) - start;
+    }
+
+    /**
+     * Transforms one character, using the table for its position.
+     *
+     * @param index index in the view
+     * @return the transformed character
+     */
+    @Override
+    public char charAt(int index) {
+        int position = start + index;
+        if (index < 0 || (end >= 0 && position >= end)) {
+            throw new IndexOutOfBoundsException("Index " + index + " is outside the text");
+        }
+        char c = source.charAt(position);
+        int letter = (c | 0x20) - 'a';
+        return letter >= 0 && letter < 26 ? (char) tables[position % tables.length][letter] : c;
+    }
+
+    /**
+     * returns a view of part of this view, keeping each character at its position in the whole text.
+     *
+     * @param from index of the first character
+     * @param to   index after the last character
+     * @return the view
+     */
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        if (from < 0 || to < from || (end >= 0 && start + to > end)) {
+            throw new IndexOutOfBoundsException("Range " + from + " to " + to + " is outside the text");
+        }
+        if (to > from) {
+            // Checks the range fits without measuring the whole text
+            source.charAt(start + to - 1);
+        }
+        return new CipherTextView(source, tables, start + from, start + to);
+    }
+
+    /**
+     * Builds the whole transformed text.
+     *
+     * @return transformed text
+     */
+    @Override
+    public String toString() {
+        char[] chars = new char[length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = charAt(i);
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,448 @@
+package uk.ac.aber.dcs.backend;
+
+import java.io.*;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.InputMismatchException;
+import java.util.Scanner;
+
+/**
+ * The columnar transposition cipher class - writes the text into rows as wide as the keyword and reads it back out
+ * a column at a time, taking the columns in the alphabetical order of the keyword's letters. Letters are moved but
+ * not changed, so a substitution cipher can be set to run before the transposition for a stronger combined cipher.
+ * <p>
+ * Strings and batch messages are transposed as one whole text. The byte array, buffer and stream methods use the
+ * block format instead, so the cipher can stream: the text is split into blocks of whole rows of at most
+ * {@value #BLOCK_FORMAT_SIZE} bytes, each transposed on its own. A text no longer than one block comes out the same
+ * either way. In both, the rows are copied a tile at a time, so the rows being read stay in the cache while each
+ * column is written.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public class ColumnarTranspositionCipher extends CipherEncryptor {
+    /**
+     * Most bytes in one block of the block format. Fixed, so tuning buffer sizes never changes the cipher text.
+     */
+    public static final int BLOCK_FORMAT_SIZE = 1 << 16;
+    private static final int TILE_ROWS = 64;
+
+    private String key;
+    private int[] columnOrder;
+    private CipherEncryptor substitution;
+    private final ThreadLocal<byte[]> scratch = new ThreadLocal<>();
+
+    /**
+     * Creates a ColumnarTranspositionCipher object. Sets the key location, creates a scanner and empties the raw
+     * text.
+     */
+    public ColumnarTranspositionCipher() {
+        setKeyLocation("./text/columnarKey.txt");
+        super.read = new Scanner(System.in);
+        setRawText("");
+    }
+
+    /**
+     * Encrypts the text by running it through the substitution cipher, if there is one, and then transposing it.
+     *
+     * @param text the string to encrypt
+     * @return encrypted text
+     */
+    @Override
+    public String encrypt(String text) {
+        return transform(text, false);
+    }
+
+    /**
+     * Decrypts the cipher text and prints the result.
+     */
+    @Override
+    public void decrypt() {
+        System.out.println(decrypt(getCipherText()));
+    }
+
+    /**
+     * Sets a substitution cipher to encrypt the text before it is transposed, and decrypt it after it is put back.
+     *
+     * @param substitution the substitution cipher with its key loaded, or null to only transpose
+     */
+    public void setSubstitution(CipherEncryptor substitution) {
+        this.substitution = substitution;
+        keyChanged();
+    }
+
+    /**
+     * returns the substitution cipher run alongside the transposition.
+     *
+     * @return the substitution cipher, or null if there isn't one
+     */
+    public CipherEncryptor getSubstitution() {
+        return substitution;
+    }
+
+    /**
+     * Transposes a whole string as one text. Text made only of single byte characters is transposed as bytes, a
+     * tile at a time, anything else is transposed a character at a time.
+     *
+     * @param text    the string to transform
+     * @param decrypt true to decrypt, false to encrypt
+     * @return the transformed text
+     */
+    @Override
+    String transformText(String text, boolean decrypt) {
+        byte[] data = new byte[text.length()];
+        char c;
+        for (int i = 0; i < data.length; i++) {
+            c = text.charAt(i);
+            if (c > 0xFF) {
+                return transformWide(text, decrypt);
+            }
+            data[i] = (byte) c;
+        }
+        try (ProgressTracker progress = startProgress(decrypt ? "Decrypt" : "Encrypt", data.length)) {
+            transformWhole(data, data.length, decrypt);
+            progress.advance(data.length);
+            progress.finish();
+        }
+        return new String(data, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Transposes a whole text in place as one block, rather than in the block format.
+     *
+     * @param data    the text, starting at index 0
+     * @param length  length of the text
+     * @param decrypt true to decrypt, false to encrypt
+     */
+    @Override
+    void transformWhole(byte[] data, int length, boolean decrypt) {
+        if (length == 0) {
+            return;
+        }
+        // Texts up to a block use the reused scratch space, longer ones need their own
+        byte[] buffer = length <= getBlockSize() ? scratch(length) : new byte[length];
+        if (substitution != null && !decrypt) {
+            substitution.transform(data, 0, length, 0, false);
+        }
+        transposeBlock(data, 0, length, buffer, decrypt);
+        if (substitution != null && decrypt) {
+            substitution.transform(data, 0, length, 0, true);
+        }
+    }
+
+    /**
+     * Transposes a whole text holding characters that don't fit in a byte. Only used for unusual input, so it isn't
+     * tiled.
+     *
+     * @param text    the string to transform
+     * @param decrypt true to decrypt, false to encrypt
+     * @return the transformed text
+     */
+    private String transformWide(String text, boolean decrypt) {
+        char[] chars = (decrypt || substitution == null ? text : substitution.transformText(text, false))
+                .toCharArray();
+        char[] output = new char[chars.length];
+        int[] starts = columnStarts(chars.length);
+
+        for (int column = 0; column < starts.length; column++) {
+            int at = starts[column];
+            for (int cell = column; cell < chars.length; cell += columnOrder.length) {
+                if (decrypt) {
+                    output[cell] = chars[at++];
+                } else {
+                    output[at++] = chars[cell];
+                }
+            }
+        }
+        String result = new String(output);
+        return decrypt && substitution != null ? substitution.transformText(result, true) : result;
+    }
+
+    /**
+     * Transposes whole blocks of a byte array in place, in the block format. The array must start on a block
+     * boundary, and only the last block of the text may be short.
+     *
+     * @param data     the bytes to transform
+     * @param offset   index of the first byte
+     * @param length   number of bytes
+     * @param position position of the first byte within the whole text
+     * @param decrypt  true to decrypt, false to encrypt
+     */
+    @Override
+    void transform(byte[] data, int offset, int length, long position, boolean decrypt) {
+        int blockSize = getBlockSize();
+        if (length == 0) {
+            return;
+        }
+        if (position % blockSize != 0) {
+            throw new IllegalArgumentException("Transposition must start on a block boundary");
+        }
+        transformBlocks(data, offset, length, position, decrypt, scratch(blockSize));
+    }
+
+    /**
+     * Runs whole blocks through the substitution cipher, if there is one, and the transposition.
+     *
+     * @param data     the bytes to transform
+     * @param offset   index of the first byte, on a block boundary
+     * @param length   number of bytes
+     * @param position position of the first byte within the whole text
+     * @param decrypt  true to decrypt, false to encrypt
+     * @param buffer   scratch space at least as long as a block
+     */
+    private void transformBlocks(byte[] data, int offset, int length, long position, boolean decrypt,
+                                 byte[] buffer) {
+        int blockSize = getBlockSize();
+        if (substitution != null && !decrypt) {
+            substitution.transform(data, offset, length, position, false);
+        }
+
+        for (int block = offset, end = offset + length; block < end; block += blockSize) {
+            transposeBlock(data, block, Math.min(blockSize, end - block), buffer, decrypt);
+        }
+
+        if (substitution != null && decrypt) {
+            substitution.transform(data, offset, length, position, true);
+        }
+    }
+
+    /**
+     * returns this thread's scratch space, making it bigger if it is shorter than asked for.
+     *
+     * @param size the smallest length needed
+     * @return scratch space
+     */
+    private byte[] scratch(int size) {
+        byte[] buffer = scratch.get();
+        if (buffer == null || buffer.length < size) {
+            buffer = new byte[size];
+            scratch.set(buffer);
+        }
+        return buffer;
+    }
+
+    /**
+     * Transposes the remaining bytes of a buffer. When the buffers aren't one array, each block is copied into the
+     * top half of the thread's scratch space and transposed there, using the bottom half as the transposition's own
+     * scratch space.
+     *
+     * @param src      the buffer to read
+     * @param dst      the buffer to write
+     * @param position position of the first byte within the whole text
+     * @param decrypt  true to decrypt, false to encrypt
+     */
+    @Override
+    void transform(ByteBuffer src, ByteBuffer dst, long position, boolean decrypt) {
+        int length = src.remaining();
+        if (dst.remaining() < length) {
+            throw new BufferOverflowException();
+        }
+        if (src == dst && src.hasArray()) {
+            transform(src.array(), src.arrayOffset() + src.position(), length, position, decrypt);
+            src.position(src.position() + length);
+        } else {
+            int blockSize = getBlockSize();
+            if (position % blockSize != 0) {
+                throw new IllegalArgumentException("Transposition must start on a block boundary");
+            }
+            byte[] buffer = scratch(2 * blockSize);
+            for (int done = 0; done < length; done += blockSize) {
+                int count = Math.min(blockSize, length - done);
+                src.get(buffer, blockSize, count);
+                transformBlocks(buffer, blockSize, count, position + done, decrypt, buffer);
+                dst.put(buffer, blockSize, count);
+            }
+        }
+    }
+
+    /**
+     * Transposes one block in place. The rows are taken a tile at a time and each column's cells in the tile are
+     * copied together, so the tile being read stays in the cache while every column is written.
+     *
+     * @param data    the bytes holding the block
+     * @param offset  index of the first byte of the block
+     * @param length  length of the block
+     * @param buffer  scratch space at least as long as the block
+     * @param decrypt true to put the columns back into rows, false to read the rows out as columns
+     */
+    private void transposeBlock(byte[] data, int offset, int length, byte[] buffer, boolean decrypt) {
+        int columns = columnOrder.length;
+        int rows = (length + columns - 1) / columns;
+        int[] starts = columnStarts(length);
+
+        for (int tile = 0; tile < rows; tile += TILE_ROWS) {
+            int tileEnd = Math.min(rows, tile + TILE_ROWS);
+            for (int column = 0; column < columns; column++) {
+                int at = starts[column] + tile;
+                int cell = tile * columns + column;
+                int end = Math.min(tileEnd * columns, length);
+                if (decrypt) {
+                    for (; cell < end; cell += columns) {
+                        buffer[cell] = data[offset + at++];
+                    }
+                } else {
+                    for (; cell < end; cell += columns) {
+                        buffer[at++] = data[offset + cell];
+                    }
+                }
+            }
+        }
+        System.arraycopy(buffer, 0, data, offset, length);
+    }
+
+    /**
+     * Works out where each column starts once the block is read out in key order. When the block doesn't fill the
+     * last row, the columns to the left of the gap are one cell longer.
+     *
+     * @param length length of the block
+     * @return the start of each column, indexed by column
+     */
+    private int[] columnStarts(int length) {
+        int columns = columnOrder.length;
+        int rows = (length + columns - 1) / columns;
+        int fullColumns = length - (rows - 1) * columns;
+        int[] starts = new int[columns];
+        int at = 0;
+
+        for (int column : columnOrder) {
+            starts[column] = at;
+            at += column < fullColumns ? rows : rows - 1;
+        }
+        return starts;
+    }
+
+    /**
+     * Blocks of the block format are whole rows, as many as fit in {@value #BLOCK_FORMAT_SIZE} bytes.
+     *
+     * @return block size in bytes
+     */
+    @Override
+    public int getBlockSize() {
+        int columns = columnOrder.length;
+        return Math.max(1, BLOCK_FORMAT_SIZE / columns) * columns;
+    }
+
+    /**
+     * Letters are moved around within their block, so a letter can't be found from its position alone.
+     *
+     * @return false
+     */
+    @Override
+    public boolean isPositional() {
+        return false;
+    }
+
+    /**
+     * The substitution cipher's key changes the result too.
+     *
+     * @return the key fingerprint
+     */
+    @Override
+    public String getKeyFingerprint() {
+        return substitution == null ? key
+                : key + "+" + substitution.getCipherName() + ":" + substitution.getKeyFingerprint();
+    }
+
+    /**
+     * writes the current keyword to file.
+     *
+     * @throws IOException thrown when the key cannot be saved
+     */
+    public void writeKey() throws IOException {
+        saveKey(key + System.lineSeparator());
+    }
+
+    /**
+     * loads the keyword from the key file.
+     */
+    public void loadKey() {
+        try (Reader fr = openKeyReader();
+             BufferedReader br = new BufferedReader(fr);
+             Scanner infile = new Scanner(br)) {
+
+            String read = "";
+            while (infile.hasNext()) {
+                read = infile.nextLine();
+            }
+
+            setKey(read);
+        } catch (IOException e) {
+            System.err.println("Error: " + e);
+        }
+    }
+
+    /**
+     * sets the keyword - must be at least two letters.
+     */
+    @Override
+    public void setCipherKey() {
+        try {
+            System.out.println("Please enter the new keyword (at least 2 letters): ");
+            String inputKey = read.nextLine();
+            if (inputKey.length() >= 2 && inputKey.chars().allMatch(Character::isLetter)) {
+                setKey(inputKey);
+                writeKey();
+            } else {
+                System.out.println("Keyword must be at least 2 letters long and only contain letters");
+            }
+        } catch (InputMismatchException i) {
+            System.err.println("Incorrect input type. Required: String");
+        } catch (IOException e) {
+            System.err.println("Error: " + e);
+        }
+    }
+
+    /**
+     * returns the cipher name (Columnar Transposition Cipher).
+     *
+     * @return Columnar Transposition Cipher.
+     */
+    public String getCipherName() {
+        return "Columnar Transposition Cipher";
+    }
+
+    /**
+     * Prints the current keyword, and the substitution cipher's key if there is one.
+     */
+    @Override
+    public void printKey() {
+        System.out.println("Keyword: " + key);
+        if (substitution != null) {
+            System.out.print(substitution.getCipherName() + " ");
+            substitution.printKey();
+        }
+    }
+
+    /**
+     * returns the current keyword.
+     *
+     * @return key variable
+     */
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * sets the keyword and works out the order the columns are read in. Repeated letters are read left to right.
+     *
+     * @param newKey desired keyword.
+     */
+    @Override
+    public void setKey(String newKey) {
+        String upper = newKey.trim().toUpperCase();
+        Integer[] order = new Integer[upper.length()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        // The sort is stable, so repeated letters keep their left to right order
+        Arrays.sort(order, Comparator.comparingInt(upper::charAt));
+
+        key = upper;
+        columnOrder = order.length == 0 ? new int[]{0} : Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+        keyChanged();
+    }
+}
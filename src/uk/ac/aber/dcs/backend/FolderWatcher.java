@@ -0,0 +1,300 @@
+package uk.ac.aber.dcs.backend;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches an inbox folder and runs every file that arrives in it through a cipher. A file is only picked up once
+ * its size and modification time have stopped changing, so files still being copied in are left alone. The result
+ * goes to the done folder and the original is removed, or the original is moved to the failed folder if it can't
+ * be processed. Finished files are recorded in a journal, so nothing is processed twice after a restart.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public class FolderWatcher implements Closeable {
+    private final CipherEncryptor cipher;
+    private final boolean decrypt;
+    private final Path inbox;
+    private final Path done;
+    private final Path failed;
+    private final Path journal;
+    private final long settleMillis;
+    private final ThreadPoolExecutor workers;
+    private final Set<String> finished = ConcurrentHashMap.newKeySet();
+    private final Set<Path> inProgress = ConcurrentHashMap.newKeySet();
+    private final Map<Path, Sighting> pending = new HashMap<>();
+    private WatchService watchService;
+    private FileOutputStream journalOut;
+
+    /**
+     * Creates a watcher. Nothing happens until run is called.
+     *
+     * @param cipher       the cipher, with its key loaded
+     * @param decrypt      true to decrypt arriving files, false to encrypt them
+     * @param inbox        the folder to watch
+     * @param done         where finished files go
+     * @param failed       where files that couldn't be processed go
+     * @param journal      file recording every finished file
+     * @param workerCount  number of files processed at once
+     * @param settleMillis how long a file must stay unchanged before it is picked up
+     */
+    public FolderWatcher(CipherEncryptor cipher, boolean decrypt, Path inbox, Path done, Path failed, Path journal,
+                         int workerCount, long settleMillis) {
+        this.cipher = cipher;
+        this.decrypt = decrypt;
+        this.inbox = inbox;
+        this.done = done;
+        this.failed = failed;
+        this.journal = journal;
+        this.settleMillis = settleMillis;
+        // When every worker is busy and the queue is full the watching thread does the work itself, which stops it
+        // picking up more files until it catches up
+        workers = new ThreadPoolExecutor(workerCount, workerCount, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workerCount * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Watches the inbox until the watcher is closed. Files already in the inbox are picked up first.
+     *
+     * @throws IOException thrown when the folders or journal cannot be used
+     */
+    public void run() throws IOException {
+        Files.createDirectories(inbox);
+        Files.createDirectories(done);
+        Files.createDirectories(failed);
+        loadJournal();
+        journalOut = new FileOutputStream(journal.toFile(), true);
+        watchService = inbox.getFileSystem().newWatchService();
+        inbox.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        scanInbox();
+
+        try {
+            while (true) {
+                WatchKey key = watchService.poll(settleMillis, TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                            scanInbox();
+                        } else {
+                            sighted(inbox.resolve((Path) event.context()));
+                        }
+                    }
+                    key.reset();
+                }
+                dispatchSettled();
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Closed, stop watching
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Stops watching. Files already being processed are finished.
+     *
+     * @throws IOException thrown when the watch service cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (journalOut != null) {
+                journalOut.close();
+            }
+        }
+    }
+
+    /**
+     * Reads the names of every file already finished.
+     *
+     * @throws IOException thrown when the journal cannot be read
+     */
+    private void loadJournal() throws IOException {
+        if (Files.exists(journal)) {
+            try (BufferedReader reader = Files.newBufferedReader(journal, StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    finished.add(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Notes every regular file currently in the inbox.
+     *
+     * @throws IOException thrown when the inbox cannot be listed
+     */
+    private void scanInbox() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(inbox)) {
+            for (Path file : files) {
+                sighted(file);
+            }
+        }
+    }
+
+    /**
+     * Records the size and modification time of a file that has just been created or changed.
+     *
+     * @param file the file
+     */
+    private void sighted(Path file) {
+        if (Files.isRegularFile(file) && !inProgress.contains(file)) {
+            pending.put(file, new Sighting(file));
+        }
+    }
+
+    /**
+     * Hands every file that has stayed unchanged for the settle time to the workers.
+     */
+    private void dispatchSettled() {
+        long now = System.currentTimeMillis();
+        Set<Path> ready = new HashSet<>();
+        Iterator<Map.Entry<Path, Sighting>> entries = pending.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Path, Sighting> entry = entries.next();
+            Sighting current = new Sighting(entry.getKey());
+            if (current.size < 0) {
+                entries.remove();
+            } else if (!current.sameAs(entry.getValue())) {
+                entry.setValue(current);
+            } else if (now - entry.getValue().seenAt >= settleMillis) {
+                ready.add(entry.getKey());
+                entries.remove();
+            }
+        }
+
+        for (Path file : ready) {
+            inProgress.add(file);
+            workers.execute(() -> process(file));
+        }
+    }
+
+    /**
+     * Runs one file through the cipher into the done folder, then records it in the journal and removes the
+     * original. The result is written under a temporary name first, so the done folder never holds half a file. A
+     * file that fails for any reason is moved to the failed folder.
+     *
+     * @param file the file to process
+     */
+    private void process(Path file) {
+        Path name = file.getFileName();
+        Path partial = done.resolve(name + ".part");
+        try {
+            String entry = journalEntry(file);
+            if (!finished.contains(entry)) {
+                try (InputStream in = Files.newInputStream(file);
+                     OutputStream out = Files.newOutputStream(partial)) {
+                    if (decrypt) {
+                        cipher.decrypt(in, out);
+                    } else {
+                        cipher.encrypt(in, out);
+                    }
+                }
+                Files.move(partial, done.resolve(name), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+                recordFinished(entry);
+            }
+            Files.delete(file);
+        } catch (IOException | RuntimeException e) {
+            // A cipher error must not end the worker, or with callers running tasks the watch loop itself
+            System.err.println("Error processing " + file + ": " + e);
+            try {
+                Files.deleteIfExists(partial);
+                Files.move(file, failed.resolve(name), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException moveError) {
+                System.err.println("Error moving " + file + " to " + failed + ": " + moveError);
+            }
+        } finally {
+            inProgress.remove(file);
+        }
+    }
+
+    /**
+     * Builds the journal line for a file from its name, size and modification time, so a new file arriving with an
+     * old name is still processed.
+     *
+     * @param file the file
+     * @return journal line
+     * @throws IOException thrown when the file's details cannot be read
+     */
+    private String journalEntry(Path file) throws IOException {
+        return file.getFileName() + "\t" + Files.size(file) + "\t" + Files.getLastModifiedTime(file).toMillis();
+    }
+
+    /**
+     * Appends a finished file to the journal and forces it to disk before the original is removed.
+     *
+     * @param entry journal line
+     * @throws IOException thrown when the journal cannot be written
+     */
+    private synchronized void recordFinished(String entry) throws IOException {
+        journalOut.write((entry + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+        journalOut.flush();
+        journalOut.getFD().sync();
+        finished.add(entry);
+    }
+
+    /**
+     * The size and modification time of a file when it was last looked at.
+     */
+    private static class Sighting {
+        private final long size;
+        private final long modified;
+        private final long seenAt = System.currentTimeMillis();
+
+        private Sighting(Path file) {
+            long fileSize;
+            long fileModified;
+            try {
+                fileSize = Files.size(file);
+                fileModified = Files.getLastModifiedTime(file).toMillis();
+            } catch (IOException e) {
+                // Gone already
+                fileSize = -1;
+                fileModified = -1;
+            }
+            size = fileSize;
+            modified = fileModified;
+        }
+
+        private boolean sameAs(Sighting other) {
+            return size == other.size && modified == other.modified;
+        }
+    }
+}
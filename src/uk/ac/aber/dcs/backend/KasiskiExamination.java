@@ -0,0 +1,347 @@
+package uk.ac.aber.dcs.backend;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Finds the likely key length of a vigenere cipher text by Kasiski examination. Repeated runs of letters in the
+ * cipher text are usually the same plain text encrypted at the same point in the key, so the distances between
+ * them tend to be multiples of the key length. Each distance votes for every key length that divides it.
+ * <p>
+ * The text is read once, start to finish, so cipher texts of any size can be examined. The last {@code minLength}
+ * letters are kept as an exact base 26 number, updated as each letter arrives, and the last position of every such
+ * n-gram is kept in an open addressing table of primitive longs and ints. Repeats longer than {@code minLength}
+ * show up as a run of n-grams repeating at the same distance, and are counted once with a vote for each n-gram in
+ * them. Positions count every character, as the ciphers do, but a repeat can't span anything that isn't a letter.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public class KasiskiExamination {
+    private static final long EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 1 << 12;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final int minLength;
+    private final int maxKeyLength;
+    private final long modulus;
+    private final long[] votes;
+
+    private long[] codes = new long[INITIAL_CAPACITY];
+    private int[] positions = new int[INITIAL_CAPACITY];
+    private int entries;
+
+    private long position;
+    private long code;
+    private int letters;
+    private long runDistance;
+    private int runLength;
+    private long repeats;
+    private long totalWeight;
+    private int longestRepeat;
+    private long longestDistance;
+
+    /**
+     * Creates an examination.
+     *
+     * @param minLength    length of the shortest repeat counted, from 3 to 12 letters
+     * @param maxKeyLength longest key length voted for
+     */
+    public KasiskiExamination(int minLength, int maxKeyLength) {
+        if (minLength < 3 || minLength > 12) {
+            throw new IllegalArgumentException("Repeats must be from 3 to 12 letters long");
+        }
+        if (maxKeyLength < 2) {
+            throw new IllegalArgumentException("The longest key length must be at least 2");
+        }
+        this.minLength = minLength;
+        this.maxKeyLength = maxKeyLength;
+        long power = 1;
+        for (int i = 0; i < minLength; i++) {
+            power *= 26;
+        }
+        modulus = power;
+        votes = new long[maxKeyLength + 1];
+        Arrays.fill(codes, EMPTY);
+    }
+
+    /**
+     * Creates an examination counting repeats of three letters or more, for keys up to 32 letters long.
+     */
+    public KasiskiExamination() {
+        this(3, 32);
+    }
+
+    /**
+     * Examines the next part of the text.
+     *
+     * @param text the text
+     */
+    public void add(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            next(text.charAt(i));
+        }
+    }
+
+    /**
+     * Examines the next part of the text.
+     *
+     * @param data   bytes of text
+     * @param offset index of the first byte
+     * @param length number of bytes
+     */
+    public void add(byte[] data, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            next(data[i]);
+        }
+    }
+
+    /**
+     * Examines everything read from a stream.
+     *
+     * @param in the text
+     * @return number of bytes read
+     * @throws IOException thrown when the stream cannot be read
+     */
+    public long add(InputStream in) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+        int read;
+        while ((read = in.read(buffer)) > 0) {
+            add(buffer, 0, read);
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Adds one character. Letters extend the current n-gram, which is looked up once it is long enough. Anything
+     * else breaks it.
+     *
+     * @param c the character
+     */
+    private void next(int c) {
+        int letter = (c | 0x20) - 'a';
+        if (letter >= 0 && letter < 26) {
+            code = (code * 26 + letter) % modulus;
+            if (++letters >= minLength) {
+                long distance = record(code);
+                if (distance > 0 && distance == runDistance) {
+                    runLength++;
+                } else {
+                    endRun();
+                    if (distance > 0) {
+                        runDistance = distance;
+                        runLength = minLength;
+                    }
+                }
+            }
+        } else {
+            endRun();
+            code = 0;
+            letters = 0;
+        }
+        position++;
+    }
+
+    /**
+     * Stores the current position as the last place an n-gram was seen.
+     *
+     * @param ngram the n-gram's base 26 code
+     * @return distance back to where it was last seen, or 0 if it is new
+     */
+    private long record(long ngram) {
+        int mask = codes.length - 1;
+        int slot = hash(ngram) & mask;
+        while (codes[slot] != EMPTY) {
+            if (codes[slot] == ngram) {
+                // Positions are kept as ints, the distance is right as long as it is under 2^32
+                long distance = Integer.toUnsignedLong((int) position - positions[slot]);
+                positions[slot] = (int) position;
+                return distance;
+            }
+            slot = (slot + 1) & mask;
+        }
+        codes[slot] = ngram;
+        positions[slot] = (int) position;
+        if (++entries * 2 > codes.length) {
+            grow();
+        }
+        return 0;
+    }
+
+    /**
+     * Doubles the table size, keeping it at most half full.
+     */
+    private void grow() {
+        long[] oldCodes = codes;
+        int[] oldPositions = positions;
+        codes = new long[oldCodes.length * 2];
+        positions = new int[oldCodes.length * 2];
+        Arrays.fill(codes, EMPTY);
+        int mask = codes.length - 1;
+
+        for (int i = 0; i < oldCodes.length; i++) {
+            if (oldCodes[i] != EMPTY) {
+                int slot = hash(oldCodes[i]) & mask;
+                while (codes[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                codes[slot] = oldCodes[i];
+                positions[slot] = oldPositions[i];
+            }
+        }
+    }
+
+    /**
+     * Spreads an n-gram code across the table. Codes of neighbouring n-grams differ mostly in their low digits.
+     *
+     * @param ngram the n-gram's base 26 code
+     * @return hash
+     */
+    private static int hash(long ngram) {
+        long h = ngram * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Finishes the current repeat, if there is one, and has its distance vote for every key length dividing it.
+     */
+    private void endRun() {
+        if (runLength == 0) {
+            return;
+        }
+        long weight = runLength - minLength + 1;
+        for (int keyLength = 2; keyLength <= maxKeyLength; keyLength++) {
+            if (runDistance % keyLength == 0) {
+                votes[keyLength] += weight;
+            }
+        }
+        repeats++;
+        totalWeight += weight;
+        if (runLength > longestRepeat) {
+            longestRepeat = runLength;
+            longestDistance = runDistance;
+        }
+        runLength = 0;
+        runDistance = 0;
+    }
+
+    /**
+     * Ranks the key lengths, most likely first, counting the repeat in progress if there is one. A distance is a
+     * multiple of a key length n about one time in n by chance, so each length is scored by how much more often
+     * than that its votes came in. Multiples of the real key length get fewer votes, and its factors are expected
+     * to get more by chance, so the real length scores highest.
+     *
+     * @return key lengths from 2 to the longest, best first
+     */
+    public List<KeyLength> getKeyLengths() {
+        endRun();
+        List<KeyLength> ranked = new ArrayList<>();
+        for (int keyLength = 2; keyLength <= maxKeyLength; keyLength++) {
+            double score = totalWeight == 0 ? 0 : (double) votes[keyLength] / totalWeight - 1.0 / keyLength;
+            ranked.add(new KeyLength(keyLength, votes[keyLength], score));
+        }
+        Collections.sort(ranked, Collections.reverseOrder());
+        return ranked;
+    }
+
+    /**
+     * returns the number of repeats found so far.
+     *
+     * @return number of repeats
+     */
+    public long getRepeatCount() {
+        return repeats;
+    }
+
+    /**
+     * returns the length of the longest repeat found so far.
+     *
+     * @return length in letters, or 0 if there are no repeats
+     */
+    public int getLongestRepeat() {
+        return longestRepeat;
+    }
+
+    /**
+     * returns the distance between the two copies of the longest repeat.
+     *
+     * @return distance in characters
+     */
+    public long getLongestRepeatDistance() {
+        return longestDistance;
+    }
+
+    /**
+     * returns the number of characters examined so far.
+     *
+     * @return number of characters
+     */
+    public long getLength() {
+        return position;
+    }
+
+    /**
+     * A key length with its votes and score.
+     */
+    public static class KeyLength implements Comparable<KeyLength> {
+        private final int length;
+        private final long votes;
+        private final double score;
+
+        /**
+         * Creates a scored key length.
+         *
+         * @param length the key length
+         * @param votes  votes from repeat distances
+         * @param score  the score
+         */
+        public KeyLength(int length, long votes, double score) {
+            this.length = length;
+            this.votes = votes;
+            this.score = score;
+        }
+
+        /**
+         * returns the key length.
+         *
+         * @return key length
+         */
+        public int getLength() {
+            return length;
+        }
+
+        /**
+         * returns the votes.
+         *
+         * @return votes
+         */
+        public long getVotes() {
+            return votes;
+        }
+
+        /**
+         * returns the score.
+         *
+         * @return score
+         */
+        public double getScore() {
+            return score;
+        }
+
+        @Override
+        public int compareTo(KeyLength other) {
+            return Double.compare(score, other.score);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d (%d votes, score %.3f)", length, votes, score);
+        }
+    }
+}
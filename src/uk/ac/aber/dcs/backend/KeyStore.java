@@ -0,0 +1,258 @@
+package uk.ac.aber.dcs.backend;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds many named keys for every cipher in one indexed file, so a single installation can keep a key per customer.
+ * Keys are appended to the file as records and found again through an in-memory index of record offsets. Recently
+ * used keys are kept in a bounded cache. Once more records have been replaced than are still in use, the file is
+ * rewritten with only the current records. Each record is forced to disk as it is appended, and a record cut off
+ * part way by a crash is dropped when the store is next opened.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public class KeyStore {
+    private static final int MAGIC = 0x4B455953;
+    private static final int CACHE_SIZE = 1024;
+    // Files with fewer replaced records than this aren't worth rewriting
+    private static final int MIN_COMPACT_RECORDS = 64;
+    private static final Map<String, KeyStore> openStores = new HashMap<>();
+
+    private final String path;
+    private RandomAccessFile file;
+    private int replacedRecords;
+    private final Map<String, Long> index = new HashMap<>();
+    private final Map<String, String> cache = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Opens the store file, creating it if it does not exist, and builds the index of the keys it holds.
+     *
+     * @param path the store file path
+     * @throws IOException thrown when the file cannot be read or is not a key store
+     */
+    private KeyStore(String path) throws IOException {
+        this.path = path;
+        file = new RandomAccessFile(path, "rw");
+        if (file.length() == 0) {
+            file.writeInt(MAGIC);
+            file.getChannel().force(false);
+        } else if (file.readInt() != MAGIC) {
+            file.close();
+            throw new IOException(path + " is not a key store");
+        }
+        buildIndex();
+    }
+
+    /**
+     * Returns the open store for a file, opening it the first time it is asked for. Every cipher using the same
+     * file shares one store.
+     *
+     * @param path the store file path
+     * @return the key store
+     * @throws IOException thrown when the store cannot be opened
+     */
+    public static synchronized KeyStore open(String path) throws IOException {
+        String canonical = new File(path).getCanonicalPath();
+        KeyStore store = openStores.get(canonical);
+        if (store == null) {
+            store = new KeyStore(canonical);
+            openStores.put(canonical, store);
+        }
+        return store;
+    }
+
+    /**
+     * Checks whether a file is a key store.
+     *
+     * @param path the file path
+     * @return true if the file exists and starts like a key store
+     */
+    public static boolean isKeyStore(String path) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(path))) {
+            return in.readInt() == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Reads through every record once, remembering where each key's text starts. Later records replace earlier
+     * ones with the same name. A record running past the end of the file was cut off while being appended, so it
+     * is cut from the file and the store carries on from the last whole record.
+     *
+     * @throws IOException thrown when the file cannot be read
+     */
+    private void buildIndex() throws IOException {
+        long length = file.length();
+        index.clear();
+        replacedRecords = 0;
+        while (file.getFilePointer() < length) {
+            long start = file.getFilePointer();
+            if (!isWholeRecord(start, length)) {
+                System.err.println("Dropping the last " + (length - start) + " bytes of " + path
+                        + ", a key that was never fully written");
+                file.setLength(start);
+                file.getChannel().force(true);
+                break;
+            }
+            String name = indexName(file.readUTF(), file.readUTF());
+            if (index.put(name, file.getFilePointer()) != null) {
+                replacedRecords++;
+            }
+            file.skipBytes(file.readUnsignedShort());
+        }
+    }
+
+    /**
+     * Checks that all three strings of a record fit before the end of the file, by their lengths alone.
+     *
+     * @param start  offset of the record
+     * @param length length of the file
+     * @return true if the whole record is there
+     * @throws IOException thrown when the file cannot be read
+     */
+    private boolean isWholeRecord(long start, long length) throws IOException {
+        long at = start;
+        for (int field = 0; field < 3; field++) {
+            if (at + 2 > length) {
+                return false;
+            }
+            file.seek(at);
+            at += 2 + file.readUnsignedShort();
+        }
+        file.seek(start);
+        return at <= length;
+    }
+
+    /**
+     * Returns the key stored for a cipher under the given id.
+     *
+     * @param cipherName the cipher the key belongs to
+     * @param keyId      the key id
+     * @return the key text, or null if there is no such key
+     * @throws IOException thrown when the key cannot be read
+     */
+    public synchronized String get(String cipherName, String keyId) throws IOException {
+        String name = indexName(cipherName, keyId);
+        String key = cache.get(name);
+        if (key == null) {
+            Long offset = index.get(name);
+            if (offset == null) {
+                return null;
+            }
+            file.seek(offset);
+            key = file.readUTF();
+            cache.put(name, key);
+        }
+        return key;
+    }
+
+    /**
+     * Stores a key for a cipher under the given id, replacing any key already stored with that id. Returns once
+     * the key is on disk.
+     *
+     * @param cipherName the cipher the key belongs to
+     * @param keyId      the key id
+     * @param key        the key text
+     * @throws IOException thrown when the key cannot be written
+     */
+    public synchronized void put(String cipherName, String keyId, String key) throws IOException {
+        file.seek(file.length());
+        file.writeUTF(cipherName);
+        file.writeUTF(keyId);
+        long offset = file.getFilePointer();
+        file.writeUTF(key);
+        // On disk before it is indexed, so a key that has been handed out can't be lost
+        file.getChannel().force(false);
+
+        String name = indexName(cipherName, keyId);
+        cache.put(name, key);
+        if (index.put(name, offset) != null && ++replacedRecords >= MIN_COMPACT_RECORDS
+                && replacedRecords > index.size()) {
+            compact();
+        }
+    }
+
+    /**
+     * Rewrites the store with only the current record for each key. The new file is written alongside the old one
+     * and moved over it, so the store is never left half written.
+     *
+     * @throws IOException thrown when the store cannot be rewritten
+     */
+    public synchronized void compact() throws IOException {
+        File compacted = new File(path + ".compact");
+        try (FileOutputStream stream = new FileOutputStream(compacted);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            out.writeInt(MAGIC);
+            for (String name : index.keySet()) {
+                file.seek(index.get(name));
+                String key = file.readUTF();
+                int split = name.indexOf('/');
+                out.writeUTF(name.substring(0, split));
+                out.writeUTF(name.substring(split + 1));
+                out.writeUTF(key);
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        file.close();
+        Files.move(compacted.toPath(), Paths.get(path), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        file = new RandomAccessFile(path, "rw");
+        file.seek(4);
+        buildIndex();
+    }
+
+    /**
+     * returns the number of keys held in the store.
+     *
+     * @return number of keys
+     */
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Closes the store file. The next call to open will read it again.
+     *
+     * @throws IOException thrown when the file cannot be closed
+     */
+    public void close() throws IOException {
+        synchronized (KeyStore.class) {
+            openStores.remove(path);
+        }
+        synchronized (this) {
+            file.close();
+        }
+    }
+
+    /**
+     * Builds the name a key is indexed under.
+     *
+     * @param cipherName the cipher the key belongs to
+     * @param keyId      the key id
+     * @return index name
+     */
+    private static String indexName(String cipherName, String keyId) {
+        return cipherName + '/' + keyId;
+    }
+}
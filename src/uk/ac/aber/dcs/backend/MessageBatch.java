@@ -0,0 +1,145 @@
+package uk.ac.aber.dcs.backend;
+
+import java.nio.CharBuffer;
+import java.util.List;
+
+/**
+ * Many short messages held end to end in one char array, with the offset where each one starts. A batch of a
+ * million messages is two arrays rather than a million strings, and ciphers can encrypt or decrypt a whole batch in
+ * one call, see {@link CipherEncryptor#encrypt(MessageBatch)}. The arrays are shared, not copied, so they must not
+ * be changed while the batch is in use.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public final class MessageBatch {
+    private final char[] text;
+    private final int[] offsets;
+
+    /**
+     * Creates a batch over messages already laid out end to end.
+     *
+     * @param text    the messages, the first starting at index 0
+     * @param offsets where each message starts, followed by where the last one ends, so message i is
+     *                {@code text[offsets[i]]} up to {@code text[offsets[i + 1]]}
+     */
+    public MessageBatch(char[] text, int[] offsets) {
+        if (offsets.length == 0 || offsets[0] != 0 || offsets[offsets.length - 1] > text.length) {
+            throw new IllegalArgumentException("Offsets must start at 0 and end within the text");
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            if (offsets[i] < offsets[i - 1]) {
+                throw new IllegalArgumentException("Offsets must not go backwards");
+            }
+        }
+        this.text = text;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Copies a list of messages into a batch.
+     *
+     * @param messages the messages
+     * @return the batch
+     */
+    public static MessageBatch of(List<? extends CharSequence> messages) {
+        int[] offsets = new int[messages.size() + 1];
+        long total = 0;
+        for (int i = 0; i < messages.size(); i++) {
+            total += messages.get(i).length();
+            if (total > Integer.MAX_VALUE - 8) {
+                throw new IllegalArgumentException("Too much text for one batch");
+            }
+            offsets[i + 1] = (int) total;
+        }
+
+        char[] text = new char[(int) total];
+        for (int i = 0; i < messages.size(); i++) {
+            CharSequence message = messages.get(i);
+            if (message instanceof String) {
+                ((String) message).getChars(0, message.length(), text, offsets[i]);
+            } else {
+                for (int j = 0; j < message.length(); j++) {
+                    text[offsets[i] + j] = message.charAt(j);
+                }
+            }
+        }
+        return new MessageBatch(text, offsets);
+    }
+
+    /**
+     * returns the number of messages.
+     *
+     * @return message count
+     */
+    public int size() {
+        return offsets.length - 1;
+    }
+
+    /**
+     * returns where a message starts in the text.
+     *
+     * @param index the message
+     * @return index of its first character
+     */
+    public int start(int index) {
+        return offsets[index];
+    }
+
+    /**
+     * returns the length of a message.
+     *
+     * @param index the message
+     * @return number of characters
+     */
+    public int length(int index) {
+        return offsets[index + 1] - offsets[index];
+    }
+
+    /**
+     * returns a message as a new string.
+     *
+     * @param index the message
+     * @return the message
+     */
+    public String get(int index) {
+        return new String(text, offsets[index], length(index));
+    }
+
+    /**
+     * returns a message without copying it.
+     *
+     * @param index the message
+     * @return a view of the message
+     */
+    public CharSequence view(int index) {
+        return CharBuffer.wrap(text, offsets[index], length(index));
+    }
+
+    /**
+     * returns the number of characters in every message together.
+     *
+     * @return total length
+     */
+    public int getTotalLength() {
+        return offsets[offsets.length - 1];
+    }
+
+    /**
+     * returns the messages' text, not copied.
+     *
+     * @return the text array
+     */
+    public char[] getText() {
+        return text;
+    }
+
+    /**
+     * returns where each message starts, followed by where the last one ends, not copied.
+     *
+     * @return the offsets array
+     */
+    public int[] getOffsets() {
+        return offsets;
+    }
+}
@@ -0,0 +1,134 @@
+package uk.ac.aber.dcs.backend;
+
+import java.util.Arrays;
+
+/**
+ * A view of raw text as it would look once prepared - punctuation removed and letters in upper case - worked out as
+ * characters are asked for instead of building the whole prepared text up front. Showing or checking the start of
+ * a large text only costs as much as the start.
+ * <p>
+ * Every {@value #CHECKPOINT_INTERVAL}th prepared character records where it came from in the raw text, so any
+ * character is found by a short scan from the checkpoint before it. Reading through in order carries on from the
+ * last character read, so each character costs O(1). Letters are upper cased one at a time, which only differs
+ * from upper casing the whole text for the few letters that become two, such as ß. Not safe to share between
+ * threads.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public final class PreparedTextView implements CharSequence {
+    private static final int CHECKPOINT_INTERVAL = 256;
+
+    private final CharSequence raw;
+    private int[] checkpoints = new int[16];
+    private int found;
+    private int scanned;
+    // The last character read and where it came from, -1 until one has been read
+    private int cursor = -1;
+    private int cursorSource;
+
+    /**
+     * Creates a view of raw text.
+     *
+     * @param raw the raw text
+     */
+    public PreparedTextView(CharSequence raw) {
+        this.raw = raw;
+    }
+
+    /**
+     * returns the number of prepared characters, scanning the rest of the raw text the first time.
+     *
+     * @return length
+     */
+    @Override
+    public int length() {
+        scanTo(Integer.MAX_VALUE);
+        return found;
+    }
+
+    /**
+     * returns a prepared character, scanning only as far into the raw text as it needs to.
+     *
+     * @param index index in the prepared text
+     * @return the character
+     */
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || (index >= found && !scanTo(index))) {
+            throw new IndexOutOfBoundsException("Index " + index + " is past the end of the prepared text");
+        }
+
+        // Carry on from the last character read if it is close behind, otherwise go from the checkpoint
+        int at;
+        int source;
+        if (cursor >= 0 && index >= cursor && index - cursor < CHECKPOINT_INTERVAL) {
+            at = cursor;
+            source = cursorSource;
+        } else {
+            at = index - index % CHECKPOINT_INTERVAL;
+            source = checkpoints[index / CHECKPOINT_INTERVAL];
+        }
+        while (at < index) {
+            if (!CipherEncryptor.isPunctuation(raw.charAt(++source))) {
+                at++;
+            }
+        }
+        cursor = index;
+        cursorSource = source;
+        return Character.toUpperCase(raw.charAt(source));
+    }
+
+    /**
+     * Finds prepared characters in the raw text until the given index is found or the raw text runs out, recording
+     * a checkpoint every {@value #CHECKPOINT_INTERVAL} characters.
+     *
+     * @param index the prepared index wanted
+     * @return true if the prepared text is long enough to have that index
+     */
+    private boolean scanTo(int index) {
+        while (found <= index && scanned < raw.length()) {
+            if (!CipherEncryptor.isPunctuation(raw.charAt(scanned))) {
+                if (found % CHECKPOINT_INTERVAL == 0) {
+                    int checkpoint = found / CHECKPOINT_INTERVAL;
+                    if (checkpoint == checkpoints.length) {
+                        checkpoints = Arrays.copyOf(checkpoints, checkpoints.length * 2);
+                    }
+                    checkpoints[checkpoint] = scanned;
+                }
+                found++;
+            }
+            scanned++;
+        }
+        return found > index;
+    }
+
+    /**
+     * Copies part of the prepared text.
+     *
+     * @param start index of the first character
+     * @param end   index after the last character
+     * @return the characters
+     */
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end < start || (end > found && !scanTo(end - 1))) {
+            throw new IndexOutOfBoundsException("Range " + start + " to " + end + " is outside the prepared text");
+        }
+        char[] chars = new char[end - start];
+        for (int i = start; i < end; i++) {
+            chars[i - start] = charAt(i);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * Builds the whole prepared text.
+     *
+     * @return prepared text
+     */
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+}
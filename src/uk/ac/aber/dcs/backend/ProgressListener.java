@@ -0,0 +1,23 @@
+package uk.ac.aber.dcs.backend;
+
+/**
+ * Told how far a long running cipher operation has got. Reports come after whole chunks of work, at most a few
+ * times a second, and may come from a background thread.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+@FunctionalInterface
+public interface ProgressListener {
+
+    /**
+     * Called as the operation gets through its input, and once more when it finishes. The last call has processed
+     * equal to total and no time remaining.
+     *
+     * @param processed      bytes or characters done so far
+     * @param total          bytes or characters in the whole operation, or -1 if not known
+     * @param bytesPerSecond average rate since the operation started
+     * @param remainingNanos estimated time left, or -1 if not known
+     */
+    void progress(long processed, long total, double bytesPerSecond, long remainingNanos);
+}
@@ -0,0 +1,215 @@
+package uk.ac.aber.dcs.backend;
+
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Follows one operation for a cipher's {@link ProgressListener} and {@link CancellationToken}, and records it as a
+ * {@link CipherOperationEvent} for flight recordings. Work is counted a chunk at a time, the token is looked at once
+ * per chunk and the listener is told at most every {@link #REPORT_INTERVAL} nanoseconds, so the per character loops
+ * don't pay for any of it. Chunks may be counted from several threads at once. An operation closed without being
+ * finished or cancelled is recorded as failed, so operations that throw still show up in a recording.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+final class ProgressTracker implements AutoCloseable {
+    /**
+     * Shortest time between reports to the listener, in nanoseconds.
+     */
+    static final long REPORT_INTERVAL = 100_000_000L;
+
+    private final ProgressListener listener;
+    private final CancellationToken token;
+    private final long total;
+    private final long start = System.nanoTime();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong lastReport = new AtomicLong(start);
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final CipherOperationEvent event = new CipherOperationEvent();
+    private final AtomicBoolean recorded = new AtomicBoolean();
+
+    /**
+     * Starts following an operation, stopping straight away if it was cancelled before it began.
+     *
+     * @param listener   told about progress, or null
+     * @param token      looked at between chunks, or null
+     * @param cipherName the cipher doing the operation
+     * @param operation  what the operation does
+     * @param total      bytes or characters in the whole operation, or -1 if not known
+     */
+    ProgressTracker(ProgressListener listener, CancellationToken token, String cipherName, String operation,
+                    long total) {
+        this.listener = listener;
+        this.token = token;
+        this.total = total;
+        event.cipherName = cipherName;
+        event.operation = operation;
+        event.begin();
+        checkCancelled();
+    }
+
+    /**
+     * Stops the operation if its token has been cancelled.
+     */
+    void checkCancelled() {
+        if (token != null && token.isCancelled()) {
+            record("Cancelled");
+            token.throwIfCancelled();
+        }
+    }
+
+    /**
+     * Counts bytes read from a file, stream or worker, for the flight recording.
+     *
+     * @param amount bytes read
+     */
+    void read(long amount) {
+        bytesRead.addAndGet(amount);
+    }
+
+    /**
+     * Counts bytes written to a file, stream or worker, for the flight recording.
+     *
+     * @param amount bytes written
+     */
+    void wrote(long amount) {
+        bytesWritten.addAndGet(amount);
+    }
+
+    /**
+     * Counts a finished chunk, reporting if it has been long enough since the last report, then stops the
+     * operation if it has been cancelled.
+     *
+     * @param amount bytes or characters in the chunk
+     */
+    void advance(long amount) {
+        long done = processed.addAndGet(amount);
+        if (listener != null) {
+            long now = System.nanoTime();
+            long last = lastReport.get();
+            if (now - last >= REPORT_INTERVAL && lastReport.compareAndSet(last, now)) {
+                report(done, now);
+            }
+        }
+        checkCancelled();
+    }
+
+    /**
+     * Reports the final count, so the listener always hears about the end of an operation. The final report gives
+     * the count as the total, even if the total wasn't known.
+     */
+    void finish() {
+        if (listener != null) {
+            long done = processed.get();
+            listener.progress(done, done, rate(done, System.nanoTime()), 0);
+        }
+        record("Completed");
+    }
+
+    /**
+     * Records the operation as failed if it ended without being finished or cancelled, such as by throwing.
+     */
+    @Override
+    public void close() {
+        record("Failed");
+    }
+
+    /**
+     * Ends the operation's flight recorder event and commits it, if anything is recording. Only the first outcome
+     * is recorded.
+     *
+     * @param outcome how the operation ended
+     */
+    private void record(String outcome) {
+        if (recorded.compareAndSet(false, true)) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.inputSize = total;
+                event.processed = processed.get();
+                event.bytesRead = bytesRead.get();
+                event.bytesWritten = bytesWritten.get();
+                event.outcome = outcome;
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Works out the rate and time left and tells the listener.
+     *
+     * @param done bytes or characters done
+     * @param now  the time now
+     */
+    private void report(long done, long now) {
+        double rate = rate(done, now);
+        long remaining = total < 0 || rate == 0 ? -1 : (long) (Math.max(0, total - done) * 1e9 / rate);
+        listener.progress(done, total, rate, remaining);
+    }
+
+    /**
+     * Works out the average rate since the operation started.
+     *
+     * @param done bytes or characters done
+     * @param now  the time now
+     * @return bytes or characters per second
+     */
+    private double rate(long done, long now) {
+        return done * 1e9 / Math.max(1, now - start);
+    }
+
+    /**
+     * Wraps a stream so everything read from it is counted as it is read.
+     *
+     * @param in the stream to read
+     * @return a counting stream
+     */
+    InputStream track(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    ProgressTracker.this.read(1);
+                    advance(1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0) {
+                    ProgressTracker.this.read(read);
+                    advance(read);
+                }
+                return read;
+            }
+        };
+    }
+
+    /**
+     * Finds how many bytes are left in a stream, when it can be told without reading it.
+     *
+     * @param in the stream
+     * @return bytes left, or -1 if not known
+     */
+    static long lengthOf(InputStream in) {
+        if (in instanceof FileInputStream) {
+            try {
+                FileInputStream file = (FileInputStream) in;
+                long left = file.getChannel().size() - file.getChannel().position();
+                // Pipes and terminals report a size of 0
+                return left > 0 ? left : -1;
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+}
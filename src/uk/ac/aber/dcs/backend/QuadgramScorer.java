@@ -0,0 +1,218 @@
+package uk.ac.aber.dcs.backend;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Scores how much a text looks like English by adding up the log probability of every run of four letters in it.
+ * The probabilities are held in a binary model file of 26^4 floats, one per quadgram, which is memory mapped rather
+ * than read. The header holds the floor and best scores, so opening a model reads none of the table and costs
+ * almost nothing, and every program using the same file shares one copy of it in the operating system's page cache.
+ * <p>
+ * Scoring keeps the index of the last four letters as a number and updates it as each letter arrives, so no
+ * strings or boxed numbers are made. Anything that isn't a letter is skipped.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public class QuadgramScorer {
+    public static final int QUADGRAMS = 26 * 26 * 26 * 26;
+    private static final int MAGIC = 0x5147524D;
+    private static final int HEADER_SIZE = 12;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final Map<Path, QuadgramScorer> openModels = new HashMap<>();
+
+    private final FloatBuffer logProbabilities;
+    private final float floor;
+    private final float bestScore;
+
+    /**
+     * Maps a model file.
+     *
+     * @param model the model file
+     * @throws IOException thrown when the file cannot be mapped or is not a quadgram model
+     */
+    private QuadgramScorer(Path model) throws IOException {
+        try (FileChannel channel = FileChannel.open(model, StandardOpenOption.READ)) {
+            if (channel.size() != HEADER_SIZE + QUADGRAMS * 4L) {
+                throw new IOException(model + " is not a quadgram model");
+            }
+            // The mapping stays valid after the channel is closed
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            if (mapped.getInt(0) != MAGIC) {
+                throw new IOException(model + " is not a quadgram model");
+            }
+            floor = mapped.getFloat(4);
+            bestScore = mapped.getFloat(8);
+            logProbabilities = mapped.position(HEADER_SIZE).slice().order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        }
+    }
+
+    /**
+     * Returns the scorer for a model file, mapping it the first time it is asked for. Every solver using the same
+     * file shares one scorer.
+     *
+     * @param model the model file
+     * @return the scorer
+     * @throws IOException thrown when the model cannot be mapped
+     */
+    public static synchronized QuadgramScorer open(Path model) throws IOException {
+        Path canonical = model.toRealPath();
+        QuadgramScorer scorer = openModels.get(canonical);
+        if (scorer == null) {
+            scorer = new QuadgramScorer(canonical);
+            openModels.put(canonical, scorer);
+        }
+        return scorer;
+    }
+
+    /**
+     * Counts every quadgram in a corpus of English text and writes their log probabilities as a model file.
+     * Quadgrams that never appear are given the log of a hundredth of a single sighting, so one unusual run of
+     * letters doesn't rule a text out.
+     *
+     * @param corpus the English text
+     * @param model  where the model is written
+     * @return number of quadgrams counted
+     * @throws IOException thrown when the corpus cannot be read or the model written
+     */
+    public static long build(InputStream corpus, Path model) throws IOException {
+        long[] counts = new long[QUADGRAMS];
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+        int index = 0;
+        int letters = 0;
+        int read;
+
+        while ((read = corpus.read(buffer)) > 0) {
+            for (int i = 0; i < read; i++) {
+                int letter = (buffer[i] | 0x20) - 'a';
+                if (letter >= 0 && letter < 26) {
+                    index = (index % (26 * 26 * 26)) * 26 + letter;
+                    if (++letters >= 4) {
+                        counts[index]++;
+                        total++;
+                    }
+                }
+            }
+        }
+        if (total == 0) {
+            throw new IOException("The corpus has no quadgrams in it");
+        }
+
+        float floor = (float) Math.log10(0.01 / total);
+        long mostCommon = Arrays.stream(counts).max().getAsLong();
+        ByteBuffer bytes = ByteBuffer.allocate(HEADER_SIZE + QUADGRAMS * 4).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.putInt(MAGIC).putFloat(floor).putFloat((float) Math.log10((double) mostCommon / total));
+        for (long count : counts) {
+            bytes.putFloat(count == 0 ? floor : (float) Math.log10((double) count / total));
+        }
+        Files.write(model, bytes.array());
+        return total;
+    }
+
+    /**
+     * Scores part of a byte array of text.
+     *
+     * @param data   the text
+     * @param offset index of the first byte
+     * @param length number of bytes
+     * @return sum of the log probabilities of its quadgrams, higher is more English
+     */
+    public double score(byte[] data, int offset, int length) {
+        double score = 0;
+        int index = 0;
+        int recent = 0;
+        int letters = 0;
+
+        for (int i = offset, end = offset + length; i < end; i++) {
+            int letter = (data[i] | 0x20) - 'a';
+            if (letter >= 0 && letter < 26) {
+                index = nextIndex(index, recent, letter);
+                recent = recent << 8 | letter;
+                if (++letters >= 4) {
+                    score += logProbabilities.get(index);
+                }
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Scores a text.
+     *
+     * @param text the text
+     * @return sum of the log probabilities of its quadgrams, higher is more English
+     */
+    public double score(CharSequence text) {
+        double score = 0;
+        int index = 0;
+        int recent = 0;
+        int letters = 0;
+
+        for (int i = 0; i < text.length(); i++) {
+            int letter = (text.charAt(i) | 0x20) - 'a';
+            if (letter >= 0 && letter < 26) {
+                index = nextIndex(index, recent, letter);
+                recent = recent << 8 | letter;
+                if (++letters >= 4) {
+                    score += logProbabilities.get(index);
+                }
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Moves a quadgram index on by one letter. Rather than dividing to drop the oldest letter, the oldest letter is
+     * taken from the last four letters packed a byte each, which keeps the division off the path from one letter to
+     * the next.
+     *
+     * @param index  the index of the last four letters
+     * @param recent the last four letters packed a byte each, newest lowest
+     * @param letter the next letter
+     * @return the index of the newest four letters
+     */
+    public static int nextIndex(int index, int recent, int letter) {
+        return (index - (recent >>> 24) * (26 * 26 * 26)) * 26 + letter;
+    }
+
+    /**
+     * returns the log probability of one quadgram, for solvers that keep their own rolling index.
+     *
+     * @param index the quadgram's letters as a base 26 number, first letter most significant
+     * @return log probability
+     */
+    public float get(int index) {
+        return logProbabilities.get(index);
+    }
+
+    /**
+     * returns the highest log probability of any quadgram, for solvers that stop scoring once a text can't win.
+     *
+     * @return best quadgram score
+     */
+    public float getBestScore() {
+        return bestScore;
+    }
+
+    /**
+     * returns the log probability given to quadgrams that never appeared in the corpus.
+     *
+     * @return floor score
+     */
+    public float getFloor() {
+        return floor;
+    }
+}
@@ -0,0 +1,183 @@
+package uk.ac.aber.dcs.backend;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Remembers recent results so that loading the same file or running the same text through the same cipher and key
+ * again can be answered straight away. Entries are looked up by a namespace (such as the cipher and direction), a
+ * fingerprint (such as the key) and the content they were made from. The cache is bounded both by entry count and
+ * by total weight in characters, and the least recently used entries are dropped first.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public class ResultCache {
+    private final int maxEntries;
+    private final long maxWeight;
+    private final LinkedHashMap<Key, String> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long hits;
+    private long misses;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param maxEntries most entries held at once
+     * @param maxWeight  most characters held at once, counting both content and results
+     */
+    public ResultCache(int maxEntries, long maxWeight) {
+        this.maxEntries = maxEntries;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Looks up a result.
+     *
+     * @param namespace   what kind of result it is
+     * @param fingerprint what it was made with
+     * @param content     what it was made from
+     * @return the result, or null if it isn't cached
+     */
+    public synchronized String get(String namespace, String fingerprint, String content) {
+        String result = entries.get(new Key(namespace, fingerprint, content));
+        if (result == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return result;
+    }
+
+    /**
+     * Stores a result, dropping the least recently used entries until the cache is back within its bounds. A result
+     * too heavy to ever fit isn't stored.
+     *
+     * @param namespace   what kind of result it is
+     * @param fingerprint what it was made with
+     * @param content     what it was made from
+     * @param result      the result
+     */
+    public synchronized void put(String namespace, String fingerprint, String content, String result) {
+        Key key = new Key(namespace, fingerprint, content);
+        long entryWeight = key.weight() + result.length();
+        if (entryWeight > maxWeight) {
+            return;
+        }
+
+        String previous = entries.put(key, result);
+        if (previous != null) {
+            weight -= key.weight() + previous.length();
+        }
+        weight += entryWeight;
+
+        Iterator<Map.Entry<Key, String>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries || weight > maxWeight) {
+            Map.Entry<Key, String> entry = eldest.next();
+            weight -= entry.getKey().weight() + entry.getValue().length();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Empties the cache. The hit and miss counts are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /**
+     * returns the number of lookups that found a result.
+     *
+     * @return hits
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * returns the number of lookups that found nothing.
+     *
+     * @return misses
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * returns the share of lookups that found a result.
+     *
+     * @return hit rate from 0 to 1
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * returns the number of entries held.
+     *
+     * @return entry count
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * returns the number of characters held.
+     *
+     * @return weight in characters
+     */
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d entries, %d characters, %d hits, %d misses (%.0f%% hit rate)", entries.size(),
+                weight, hits, misses, getHitRate() * 100);
+    }
+
+    /**
+     * What a result was made from. The content's hash picks the bucket, and the content itself is compared so that
+     * two texts with the same hash never share a result.
+     */
+    private static class Key {
+        private final String namespace;
+        private final String fingerprint;
+        private final String content;
+        private final int hash;
+
+        private Key(String namespace, String fingerprint, String content) {
+            this.namespace = namespace;
+            this.fingerprint = fingerprint;
+            this.content = content;
+            hash = Objects.hash(namespace, fingerprint, content);
+        }
+
+        private long weight() {
+            return content.length();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && namespace.equals(other.namespace) && fingerprint.equals(other.fingerprint)
+                    && content.equals(other.content);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
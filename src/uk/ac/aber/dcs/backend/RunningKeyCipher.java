@@ -0,0 +1,385 @@
+package uk.ac.aber.dcs.backend;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.InputMismatchException;
+import java.util.Scanner;
+
+/**
+ * The running key cipher class - a vigenere cipher whose key is the text of a book, so the key never repeats. The
+ * key file holds the path of the book. The book is memory mapped a window at a time, so books far larger than the
+ * heap can be used. Each position of the text uses the next letter of the book, skipping anything in the book that
+ * isn't a letter. Texts must be processed in order from the start. Texts transformed a part at a time are each
+ * given their own state by {@link #startText()}. The positional methods keep one text per thread, so a thread must
+ * finish one text before starting the next.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public class RunningKeyCipher extends CipherEncryptor {
+    private static final long WINDOW_SIZE = 64L << 20;
+
+    private String key;
+    private FileChannel book;
+    private volatile int generation;
+    private final ThreadLocal<Progress> progress = ThreadLocal.withInitial(Progress::new);
+
+    /**
+     * Creates a RunningKeyCipher object. Sets the key location, creates a scanner and empties the raw text.
+     */
+    public RunningKeyCipher() {
+        setKeyLocation("./text/runningKey.txt");
+        super.read = new Scanner(System.in);
+        setRawText("");
+    }
+
+    /**
+     * Encrypts the text using the letters of the book as the key.
+     *
+     * @param text the string to encrypt
+     * @return encrypted text
+     */
+    @Override
+    public String encrypt(String text) {
+        return transform(text, false);
+    }
+
+    /**
+     * Decrypts the cipher text and prints the result.
+     */
+    @Override
+    public void decrypt() {
+        System.out.println(decrypt(getCipherText()));
+    }
+
+    /**
+     * Runs a whole string through the cipher from the start.
+     *
+     * @param text    the string to transform
+     * @param decrypt true to decrypt, false to encrypt
+     * @return the transformed text
+     */
+    @Override
+    String transformText(String text, boolean decrypt) {
+        return transformTextInChunks(text, decrypt);
+    }
+
+    /**
+     * Starts a text at the beginning of the book.
+     *
+     * @return the state of a new text, at position 0
+     */
+    @Override
+    public TextState startText() {
+        Progress text = new Progress();
+        text.reset(openBook(), generation);
+        return text;
+    }
+
+    /**
+     * Runs the next part of a text through the cipher, carrying on from its place in the book.
+     *
+     * @param text    the text, started by this cipher
+     * @param data    the bytes to transform
+     * @param offset  index of the first byte
+     * @param length  number of bytes
+     * @param decrypt true to decrypt, false to encrypt
+     * @throws IllegalStateException thrown when the book has changed since the text was started
+     */
+    @Override
+    void transform(TextState text, byte[] data, int offset, int length, boolean decrypt) {
+        Progress current = (Progress) text;
+        if (current.generation != generation) {
+            throw new IllegalStateException("The key book changed part way through the text");
+        }
+        for (int i = offset, end = offset + length; i < end; i++) {
+            data[i] = current.step(data[i], decrypt);
+        }
+    }
+
+    /**
+     * Runs part of a byte array through the cipher. Must carry on from where the last call on this thread stopped,
+     * or start again at position 0.
+     *
+     * @param data     the bytes to transform
+     * @param offset   index of the first byte
+     * @param length   number of bytes
+     * @param position position of the first byte within the whole text
+     * @param decrypt  true to decrypt, false to encrypt
+     */
+    @Override
+    void transform(byte[] data, int offset, int length, long position, boolean decrypt) {
+        Progress current = progressAt(position);
+        for (int i = offset, end = offset + length; i < end; i++) {
+            data[i] = current.step(data[i], decrypt);
+        }
+    }
+
+    /**
+     * Runs the remaining bytes of a buffer through the cipher, carrying on from where the last call on this thread
+     * stopped.
+     *
+     * @param src      the buffer to read
+     * @param dst      the buffer to write
+     * @param position position of the first byte within the whole text
+     * @param decrypt  true to decrypt, false to encrypt
+     */
+    @Override
+    void transform(ByteBuffer src, ByteBuffer dst, long position, boolean decrypt) {
+        Progress current = progressAt(position);
+        while (src.hasRemaining()) {
+            dst.put(current.step(src.get(), decrypt));
+        }
+    }
+
+    /**
+     * Finds this thread's progress through the book, going back to the start of the book when asked for position 0.
+     *
+     * @param position the position about to be transformed
+     * @return progress through the book
+     */
+    private Progress progressAt(long position) {
+        Progress current = progress.get();
+        if (position == 0 || current.generation != generation) {
+            current.reset(openBook(), generation);
+        } else if (position != current.next) {
+            throw new IllegalStateException("Running key text must be processed in order from the start");
+        }
+        return current;
+    }
+
+    /**
+     * returns the channel for the book, opening it after a key change. Every thread maps its own windows of the
+     * same channel.
+     *
+     * @return the book channel
+     */
+    private synchronized FileChannel openBook() {
+        if (book == null) {
+            try {
+                book = FileChannel.open(Paths.get(key), StandardOpenOption.READ);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot open the key book " + key, e);
+            }
+        }
+        return book;
+    }
+
+    /**
+     * Closes the book after a key change, so the next text opens the new one.
+     */
+    @Override
+    synchronized void keyChanged() {
+        super.keyChanged();
+        if (book != null) {
+            try {
+                book.close();
+            } catch (IOException e) {
+                System.err.println("Error: " + e);
+            }
+            book = null;
+        }
+        generation++;
+    }
+
+    /**
+     * The book changes the result as much as its path does, so its size and modified time are part of the
+     * fingerprint.
+     *
+     * @return the key fingerprint
+     */
+    @Override
+    public String getKeyFingerprint() {
+        File file = new File(key);
+        return key + ":" + file.length() + ":" + file.lastModified();
+    }
+
+    /**
+     * Finding the book letter for a position means counting the letters before it.
+     *
+     * @return false
+     */
+    @Override
+    public boolean isPositional() {
+        return false;
+    }
+
+    /**
+     * writes the current book path to file.
+     *
+     * @throws IOException thrown when the key cannot be saved
+     */
+    public void writeKey() throws IOException {
+        saveKey(key + System.lineSeparator());
+    }
+
+    /**
+     * loads the book path from the key file.
+     */
+    public void loadKey() {
+        try (Reader fr = openKeyReader();
+             BufferedReader br = new BufferedReader(fr);
+             Scanner infile = new Scanner(br)) {
+
+            String read = "";
+            while (infile.hasNext()) {
+                read = infile.nextLine();
+            }
+
+            setKey(read);
+        } catch (IOException e) {
+            System.err.println("Error: " + e);
+        }
+    }
+
+    /**
+     * sets the book - must be a file that exists.
+     */
+    @Override
+    public void setCipherKey() {
+        try {
+            System.out.println("Please enter the path of the book to use as the key: ");
+            String inputKey = read.nextLine();
+            if (new File(inputKey).isFile()) {
+                setKey(inputKey);
+                writeKey();
+            } else {
+                System.out.println("Book cannot be found");
+            }
+        } catch (InputMismatchException i) {
+            System.err.println("Incorrect input type. Required: String");
+        } catch (IOException e) {
+            System.err.println("Error: " + e);
+        }
+    }
+
+    /**
+     * returns the cipher name (Running Key Cipher).
+     *
+     * @return Running Key Cipher.
+     */
+    public String getCipherName() {
+        return "Running Key Cipher";
+    }
+
+    /**
+     * Prints the current book path.
+     */
+    @Override
+    public void printKey() {
+        System.out.println("Book: " + key);
+    }
+
+    /**
+     * returns the current book path.
+     *
+     * @return key variable
+     */
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * sets the book path.
+     *
+     * @param newKey path of the book.
+     */
+    @Override
+    public void setKey(String newKey) {
+        key = newKey.trim();
+        keyChanged();
+    }
+
+    /**
+     * How far a text has got through the book. The book is mapped one window at a time.
+     */
+    private static class Progress extends TextState {
+        private int generation = -1;
+        private FileChannel book;
+        private MappedByteBuffer window;
+        private long windowStart;
+
+        /**
+         * Starts again from the beginning of a text and the book.
+         *
+         * @param book       the book channel
+         * @param generation the key generation it belongs to
+         */
+        private void reset(FileChannel book, int generation) {
+            if (book == this.book && generation == this.generation && window != null && windowStart == 0) {
+                // Still on the book's first window, so reuse it rather than mapping it again for every message
+                window.rewind();
+            } else {
+                this.book = book;
+                this.generation = generation;
+                window = null;
+                windowStart = 0;
+            }
+            next = 0;
+        }
+
+        /**
+         * Transforms the next byte of the text using the next letter of the book.
+         *
+         * @param b       the next byte
+         * @param decrypt true to decrypt, false to encrypt
+         * @return the transformed byte
+         */
+        private byte step(byte b, boolean decrypt) {
+            int shift = nextBookLetter();
+            int letter = (b | 0x20) - 'a';
+            next++;
+
+            if (letter < 0 || letter >= 26) {
+                return b;
+            }
+            int shifted = decrypt ? letter - shift : letter + shift;
+            if (shifted < 0) {
+                shifted += 26;
+            } else if (shifted >= 26) {
+                shifted -= 26;
+            }
+            return (byte) ('A' + shifted);
+        }
+
+        /**
+         * Reads forward through the book to its next letter, mapping the next window when this one runs out.
+         *
+         * @return the letter as a shift from 0 to 25
+         */
+        private int nextBookLetter() {
+            while (true) {
+                while (window != null && window.hasRemaining()) {
+                    int letter = (window.get() | 0x20) - 'a';
+                    if (letter >= 0 && letter < 26) {
+                        return letter;
+                    }
+                }
+                mapNextWindow();
+            }
+        }
+
+        /**
+         * Maps the next window of the book.
+         */
+        private void mapNextWindow() {
+            try {
+                if (window != null) {
+                    windowStart += window.capacity();
+                }
+                long size = book.size();
+                if (windowStart >= size) {
+                    throw new IllegalStateException("The key book is shorter than the text");
+                }
+                window = book.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(WINDOW_SIZE, size - windowStart));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot read the key book", e);
+            }
+        }
+    }
+}
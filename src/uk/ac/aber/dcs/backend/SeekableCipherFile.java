@@ -0,0 +1,174 @@
+package uk.ac.aber.dcs.backend;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A read-only view of the plain text behind a cipher text file. Any range can be decrypted straight from the file
+ * with positional reads, because every letter can be decrypted from its position alone, so reading a record near
+ * the end of a large file doesn't mean decrypting everything before it.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public class SeekableCipherFile implements SeekableByteChannel {
+    private final FileChannel channel;
+    private final CipherEncryptor cipher;
+    private long position;
+
+    /**
+     * Opens a cipher text file for reading.
+     *
+     * @param file   the cipher text file
+     * @param cipher the cipher, with its key loaded, that produced the file
+     * @throws IOException thrown when the file cannot be opened, or the cipher can't decrypt from any position
+     */
+    public SeekableCipherFile(Path file, CipherEncryptor cipher) throws IOException {
+        if (!cipher.isPositional()) {
+            throw new IOException(cipher.getCipherName() + " can only be decrypted from the start of the text");
+        }
+        this.cipher = cipher;
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+    }
+
+    /**
+     * Decrypts a range of the file.
+     *
+     * @param offset position of the first character
+     * @param length number of characters, fewer are returned if the file ends first
+     * @return the plain text
+     * @throws IOException thrown when the file cannot be read
+     */
+    public String read(long offset, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining() && read(buffer, offset + buffer.position()) >= 0) {
+            // Keep reading until the range is filled or the file ends
+        }
+        return new String(buffer.array(), 0, buffer.position(), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Reads from the given position of the file into a buffer and decrypts what was read in place. Doesn't change
+     * the channel's own position.
+     *
+     * @param dst    the buffer to fill
+     * @param offset position in the file to read from
+     * @return number of bytes read, or -1 at the end of the file
+     * @throws IOException thrown when the file cannot be read
+     */
+    public int read(ByteBuffer dst, long offset) throws IOException {
+        int start = dst.position();
+        int read = channel.read(dst, offset);
+        if (read > 0) {
+            int limit = dst.limit();
+            dst.limit(dst.position()).position(start);
+            cipher.decrypt(dst, dst, offset);
+            dst.limit(limit);
+        }
+        return read;
+    }
+
+    /**
+     * Reads and decrypts from the channel's position, moving it forward.
+     *
+     * @param dst the buffer to fill
+     * @return number of bytes read, or -1 at the end of the file
+     * @throws IOException thrown when the file cannot be read
+     */
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        int read = read(dst, position);
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+
+    /**
+     * Opens a reader over the plain text from the given position. The reader moves this channel's position as it
+     * reads.
+     *
+     * @param offset position of the first character
+     * @return a reader over the plain text
+     */
+    public Reader openReader(long offset) {
+        position = offset;
+        return Channels.newReader(this, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * The file is read-only.
+     *
+     * @param src unused
+     * @return never returns
+     */
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    /**
+     * returns the current position.
+     *
+     * @return position
+     */
+    @Override
+    public long position() {
+        return position;
+    }
+
+    /**
+     * moves the position to anywhere in the file.
+     *
+     * @param newPosition desired position
+     * @return this channel
+     */
+    @Override
+    public SeekableCipherFile position(long newPosition) {
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Position cannot be negative");
+        }
+        position = newPosition;
+        return this;
+    }
+
+    /**
+     * returns the size of the file.
+     *
+     * @return size in bytes
+     * @throws IOException thrown when the size cannot be read
+     */
+    @Override
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    /**
+     * The file is read-only.
+     *
+     * @param size unused
+     * @return never returns
+     */
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,399 @@
+package uk.ac.aber.dcs.backend;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Splits large inputs into shards and has them encrypted or decrypted by {@link ShardWorker} processes on this
+ * machine, so a job is not limited by the memory and garbage collection of a single JVM. Each shard is sent with
+ * its position in its file, so every worker uses the right part of the key. Transformed shards are written back
+ * at the offset they were read from, which puts the output in order whatever order the shards finish in.
+ * <p>
+ * A worker that dies or drops its connection is restarted and its shard sent again. A shard the cipher itself
+ * rejects fails the whole job. Finished shards are reported to the cipher's progress listener, and cancelling the
+ * cipher's token stops the job once the shards already sent are back.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public class ShardCoordinator implements Closeable {
+    public static final int DEFAULT_SHARD_SIZE = 8 << 20;
+    private static final int MAX_RESTARTS = 3;
+    private static final String PORT_PREFIX = "port ";
+
+    private final CipherEncryptor cipher;
+    private final boolean decrypt;
+    private final List<String> workerCommand;
+    private final int shardSize;
+    private final List<Worker> workers = new ArrayList<>();
+    private final AtomicInteger restarts = new AtomicInteger();
+
+    /**
+     * Creates a coordinator and starts its workers.
+     *
+     * @param cipher        the cipher, with its key loaded - it must be able to transform any position on its own
+     * @param decrypt       true to decrypt, false to encrypt
+     * @param workerCommand command that starts a worker process, which must print {@code port n} on its first
+     *                      line of output and exit when its standard input is closed
+     * @param workerCount   number of worker processes
+     * @param shardSize     bytes in each shard
+     * @throws IOException thrown when the workers cannot be started
+     */
+    public ShardCoordinator(CipherEncryptor cipher, boolean decrypt, List<String> workerCommand, int workerCount,
+                            int shardSize) throws IOException {
+        if (!cipher.isPositional()) {
+            throw new IOException(cipher.getCipherName() + " can't be split into shards");
+        }
+        if (workerCount < 1 || shardSize < 1) {
+            throw new IllegalArgumentException("Worker count and shard size must be at least 1");
+        }
+        this.cipher = cipher;
+        this.decrypt = decrypt;
+        this.workerCommand = new ArrayList<>(workerCommand);
+        this.shardSize = shardSize;
+
+        try {
+            for (int i = 0; i < workerCount; i++) {
+                Worker worker = new Worker();
+                workers.add(worker);
+                worker.start();
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Transforms one file into another.
+     *
+     * @param input  the file to read
+     * @param output the file to write
+     * @return number of bytes transformed
+     * @throws IOException thrown when a file cannot be used or the job fails
+     */
+    public long run(Path input, Path output) throws IOException {
+        return run(Collections.singletonList(input), Collections.singletonList(output));
+    }
+
+    /**
+     * Transforms a set of files, writing each to a file of the same name in the output folder. Every file starts
+     * at the beginning of the key.
+     *
+     * @param inputs       the files to read
+     * @param outputFolder where the results are written
+     * @return number of bytes transformed
+     * @throws IOException thrown when a file cannot be used or the job fails
+     */
+    public long runAll(List<Path> inputs, Path outputFolder) throws IOException {
+        Files.createDirectories(outputFolder);
+        List<Path> outputs = new ArrayList<>();
+        for (Path input : inputs) {
+            outputs.add(outputFolder.resolve(input.getFileName()));
+        }
+        return run(inputs, outputs);
+    }
+
+    /**
+     * Splits every input into shards, hands them out to the workers and waits for them all to be written.
+     *
+     * @param inputs  the files to read
+     * @param outputs the files to write, one for each input
+     * @return number of bytes transformed
+     * @throws IOException thrown when a file cannot be used or the job fails
+     */
+    private long run(List<Path> inputs, List<Path> outputs) throws IOException {
+        List<FileChannel> channels = new ArrayList<>();
+        BlockingQueue<Shard> pending = new LinkedBlockingQueue<>();
+        long total = 0;
+
+        try {
+            for (int i = 0; i < inputs.size(); i++) {
+                FileChannel in = FileChannel.open(inputs.get(i), StandardOpenOption.READ);
+                channels.add(in);
+                FileChannel out = FileChannel.open(outputs.get(i), StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                channels.add(out);
+                long size = in.size();
+                for (long offset = 0; offset < size; offset += shardSize) {
+                    pending.add(new Shard(in, out, offset, (int) Math.min(shardSize, size - offset)));
+                }
+                total += size;
+            }
+
+            try (ProgressTracker progress = cipher.startProgress(decrypt ? "Sharded decrypt" : "Sharded encrypt",
+                    total)) {
+                Job job = new Job(pending, progress);
+                List<Thread> dispatchers = new ArrayList<>();
+                for (Worker worker : workers) {
+                    Thread dispatcher = new Thread(() -> dispatch(worker, job), "shard-dispatcher");
+                    dispatchers.add(dispatcher);
+                    dispatcher.start();
+                }
+                for (Thread dispatcher : dispatchers) {
+                    dispatcher.join();
+                }
+                if (job.failure instanceof CancellationException) {
+                    throw (CancellationException) job.failure;
+                }
+                if (job.failure != null) {
+                    throw (IOException) job.failure;
+                }
+                progress.finish();
+                return total;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Sharded job interrupted", e);
+        } finally {
+            for (FileChannel channel : channels) {
+                channel.close();
+            }
+        }
+    }
+
+    /**
+     * Sends shards to one worker until every shard is done. A shard lost with a failed worker goes back in the
+     * queue and the worker is restarted, up to a limit.
+     *
+     * @param worker the worker
+     * @param job    the shards and progress of the job
+     */
+    private void dispatch(Worker worker, Job job) {
+        byte[] buffer = new byte[shardSize];
+        int failures = 0;
+
+        try {
+            while (job.remaining.get() > 0 && job.failure == null) {
+                job.progress.checkCancelled();
+                Shard shard = job.pending.poll(100, TimeUnit.MILLISECONDS);
+                if (shard == null) {
+                    continue;
+                }
+                readFully(shard.in, ByteBuffer.wrap(buffer, 0, shard.length), shard.offset);
+                try {
+                    worker.transform(buffer, shard);
+                    failures = 0;
+                } catch (CipherFailure e) {
+                    throw e;
+                } catch (IOException e) {
+                    job.pending.add(shard);
+                    if (++failures > MAX_RESTARTS) {
+                        throw new IOException("Worker failed " + failures + " times in a row", e);
+                    }
+                    restarts.incrementAndGet();
+                    worker.restart();
+                    continue;
+                }
+                ByteBuffer result = ByteBuffer.wrap(buffer, 0, shard.length);
+                long position = shard.offset;
+                while (result.hasRemaining()) {
+                    position += shard.out.write(result, position);
+                }
+                job.remaining.decrementAndGet();
+                job.progress.read(shard.length);
+                job.progress.wrote(shard.length);
+                job.progress.advance(shard.length);
+            }
+        } catch (IOException | CancellationException e) {
+            job.fail(e);
+        } catch (InterruptedException e) {
+            job.fail(new IOException("Sharded job interrupted", e));
+        }
+    }
+
+    /**
+     * Reads until the buffer is full.
+     *
+     * @param channel  the file
+     * @param buffer   the buffer to fill
+     * @param position where to read from
+     * @throws IOException thrown when the file cannot be read or ends too soon
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("File changed while being split into shards");
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * returns the number of times a worker has been restarted.
+     *
+     * @return number of restarts
+     */
+    public int getRestarts() {
+        return restarts.get();
+    }
+
+    /**
+     * Stops every worker process.
+     */
+    @Override
+    public void close() {
+        for (Worker worker : workers) {
+            worker.stop();
+        }
+    }
+
+    /**
+     * A run of bytes from one file.
+     */
+    private static class Shard {
+        private final FileChannel in;
+        private final FileChannel out;
+        private final long offset;
+        private final int length;
+
+        private Shard(FileChannel in, FileChannel out, long offset, int length) {
+            this.in = in;
+            this.out = out;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    /**
+     * The shards still to do, the progress made and the first error or cancellation, shared by the dispatchers.
+     */
+    private static class Job {
+        private final BlockingQueue<Shard> pending;
+        private final AtomicInteger remaining;
+        private final ProgressTracker progress;
+        private volatile Exception failure;
+
+        private Job(BlockingQueue<Shard> pending, ProgressTracker progress) {
+            this.pending = pending;
+            this.progress = progress;
+            remaining = new AtomicInteger(pending.size());
+        }
+
+        private synchronized void fail(Exception e) {
+            if (failure == null) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * One worker process and the connection to it.
+     */
+    private class Worker {
+        private Process process;
+        private Socket socket;
+        private DataInputStream in;
+        private DataOutputStream out;
+
+        /**
+         * Starts the process, waits for it to say which port it is listening on and connects to it.
+         *
+         * @throws IOException thrown when the worker cannot be started or connected to
+         */
+        private void start() throws IOException {
+            process = new ProcessBuilder(workerCommand).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+            BufferedReader output = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.US_ASCII));
+            String line = output.readLine();
+            if (line == null || !line.startsWith(PORT_PREFIX)) {
+                process.destroyForcibly();
+                throw new IOException("Worker did not start: " + line);
+            }
+            int port = Integer.parseInt(line.substring(PORT_PREFIX.length()).trim());
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+        }
+
+        /**
+         * Sends a shard and replaces it with the worker's answer.
+         *
+         * @param buffer the shard's bytes, overwritten with the result
+         * @param shard  the shard
+         * @throws IOException thrown when the worker cannot be reached
+         */
+        private void transform(byte[] buffer, Shard shard) throws IOException {
+            out.writeInt(ShardWorker.REQUEST);
+            out.writeUTF(cipher.getCipherName());
+            out.writeInt(cipher.getShift());
+            String key = cipher.getKey();
+            out.writeBoolean(key != null);
+            if (key != null) {
+                out.writeUTF(key);
+            }
+            out.writeBoolean(decrypt);
+            out.writeLong(shard.offset);
+            out.writeInt(shard.length);
+            out.write(buffer, 0, shard.length);
+            out.flush();
+
+            if (!in.readBoolean()) {
+                // The worker is fine, the cipher isn't, so sending it again won't help
+                throw new CipherFailure(in.readUTF());
+            }
+            in.readFully(buffer, 0, shard.length);
+        }
+
+        /**
+         * Replaces the worker with a new process.
+         *
+         * @throws IOException thrown when the new worker cannot be started
+         */
+        private void restart() throws IOException {
+            stop();
+            start();
+        }
+
+        /**
+         * Closes the connection and ends the process.
+         */
+        private void stop() {
+            try {
+                if (socket != null) {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                // Already gone
+            }
+            if (process != null) {
+                process.destroy();
+            }
+        }
+    }
+
+    /**
+     * A shard the worker's cipher rejected.
+     */
+    private static class CipherFailure extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        private CipherFailure(String message) {
+            super(message);
+        }
+    }
+}
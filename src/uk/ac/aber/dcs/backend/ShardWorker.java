@@ -0,0 +1,161 @@
+package uk.ac.aber.dcs.backend;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Serves shards of text to be encrypted or decrypted for a {@link ShardCoordinator} in another process. The worker
+ * listens on a local port, and each connection sends requests one after another:
+ * <pre>
+ *     int REQUEST, UTF cipher name, int shift, boolean has key, [UTF key], boolean decrypt,
+ *     long position, int length, length bytes
+ * </pre>
+ * and gets back either {@code true, length bytes} with the transformed shard, or {@code false, UTF message} when
+ * the shard can't be transformed. The position is where the shard starts in the whole text, so each shard uses the
+ * right part of the key.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public class ShardWorker implements Closeable {
+    static final int REQUEST = 0x53484152;
+
+    private final ServerSocket server;
+
+    /**
+     * Starts listening on a port of the loopback address, so only processes on this machine can connect.
+     *
+     * @param port the port, or 0 for any free port
+     * @throws IOException thrown when the port cannot be used
+     */
+    public ShardWorker(int port) throws IOException {
+        server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * returns the port the worker is listening on.
+     *
+     * @return port number
+     */
+    public int getPort() {
+        return server.getLocalPort();
+    }
+
+    /**
+     * Accepts connections until the worker is closed, serving each on its own thread.
+     *
+     * @throws IOException thrown when connections can no longer be accepted
+     */
+    public void run() throws IOException {
+        while (!server.isClosed()) {
+            Socket socket;
+            try {
+                socket = server.accept();
+            } catch (IOException e) {
+                if (server.isClosed()) {
+                    return;
+                }
+                throw e;
+            }
+            Thread connection = new Thread(() -> serve(socket), "shard-worker-" + socket.getPort());
+            connection.setDaemon(true);
+            connection.start();
+        }
+    }
+
+    /**
+     * Answers requests on one connection until the coordinator closes it. The cipher is kept between requests and
+     * only rebuilt when the request asks for a different cipher or key.
+     *
+     * @param socket the connection
+     */
+    private void serve(Socket socket) {
+        CipherEncryptor cipher = null;
+        String fingerprint = null;
+        byte[] buffer = new byte[0];
+
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            while (true) {
+                int request;
+                try {
+                    request = in.readInt();
+                } catch (EOFException e) {
+                    return;
+                }
+                if (request != REQUEST) {
+                    throw new IOException("Not a shard request");
+                }
+                String cipherName = in.readUTF();
+                int shift = in.readInt();
+                String key = in.readBoolean() ? in.readUTF() : null;
+                boolean decrypt = in.readBoolean();
+                long position = in.readLong();
+                int length = in.readInt();
+                if (buffer.length < length) {
+                    buffer = new byte[length];
+                }
+                in.readFully(buffer, 0, length);
+
+                try {
+                    String wanted = cipherName + ":" + shift + ":" + key;
+                    if (!wanted.equals(fingerprint)) {
+                        cipher = createCipher(cipherName, shift, key);
+                        fingerprint = wanted;
+                    }
+                    cipher.transform(buffer, 0, length, position, decrypt);
+                } catch (RuntimeException e) {
+                    fingerprint = null;
+                    out.writeBoolean(false);
+                    out.writeUTF(String.valueOf(e.getMessage()));
+                    out.flush();
+                    continue;
+                }
+                out.writeBoolean(true);
+                out.write(buffer, 0, length);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // The coordinator has gone, it will send the shard to another worker
+        }
+    }
+
+    /**
+     * Rebuilds a cipher from what was sent.
+     *
+     * @param cipherName the cipher name
+     * @param shift      the shift, ignored by ciphers without one
+     * @param key        the key, or null if the cipher has none
+     * @return the cipher
+     */
+    private static CipherEncryptor createCipher(String cipherName, int shift, String key) {
+        CipherEncryptor cipher = CipherEncryptor.forName(cipherName);
+        if (cipher == null) {
+            throw new IllegalArgumentException("Unknown cipher " + cipherName);
+        }
+        cipher.setShift(shift);
+        if (key != null) {
+            cipher.setKey(key);
+        }
+        return cipher;
+    }
+
+    /**
+     * Stops accepting connections. Connections already open are served until they close.
+     *
+     * @throws IOException thrown when the port cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        server.close();
+    }
+}
@@ -0,0 +1,25 @@
+package uk.ac.aber.dcs.backend;
+
+/**
+ * How far a text has got through a cipher when it is transformed a part at a time. Ciphers whose key depends on the
+ * text before each letter also keep what they need to carry on in it, so parts of several texts can be transformed
+ * on one thread without mixing them up. Made by {@link CipherEncryptor#startText()}.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public class TextState {
+    long next;
+
+    TextState() {
+    }
+
+    /**
+     * returns the position of the next byte of the text.
+     *
+     * @return position within the whole text
+     */
+    public long getPosition() {
+        return next;
+    }
+}
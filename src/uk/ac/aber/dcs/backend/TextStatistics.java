@@ -0,0 +1,138 @@
+package uk.ac.aber.dcs.backend;
+
+/**
+ * Letter and letter pair counts for a piece of text. Only the letters A to Z are counted, and pairs are only counted
+ * when both letters sit next to each other in the text.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public final class TextStatistics {
+    private final long[] unigrams;
+    private final long[] bigrams;
+    private final long total;
+
+    /**
+     * Creates statistics from finished counts. The arrays are kept, not copied.
+     *
+     * @param unigrams count of each letter
+     * @param bigrams  count of each letter pair, indexed by first * 26 + second
+     */
+    private TextStatistics(long[] unigrams, long[] bigrams) {
+        this.unigrams = unigrams;
+        this.bigrams = bigrams;
+        long sum = 0;
+        for (long count : unigrams) {
+            sum += count;
+        }
+        total = sum;
+    }
+
+    /**
+     * Counts the letters in a piece of text.
+     *
+     * @param text the text to count
+     * @return statistics for the text
+     */
+    public static TextStatistics of(CharSequence text) {
+        Counter counter = new Counter();
+        for (int i = 0; i < text.length(); i++) {
+            counter.add(text.charAt(i));
+        }
+        return counter.build();
+    }
+
+    /**
+     * returns the total number of letters counted.
+     *
+     * @return number of letters
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * returns how many times a letter appeared.
+     *
+     * @param letter an upper case letter
+     * @return count
+     */
+    public long getCount(char letter) {
+        return unigrams[letter - 'A'];
+    }
+
+    /**
+     * returns the share of all letters taken up by one letter.
+     *
+     * @param letter an upper case letter
+     * @return frequency from 0 to 1
+     */
+    public double getFrequency(char letter) {
+        return total == 0 ? 0 : (double) getCount(letter) / total;
+    }
+
+    /**
+     * returns how many times one letter was directly followed by another.
+     *
+     * @param first  the first upper case letter
+     * @param second the second upper case letter
+     * @return count
+     */
+    public long getBigramCount(char first, char second) {
+        return bigrams[(first - 'A') * 26 + (second - 'A')];
+    }
+
+    /**
+     * returns a copy of the letter counts.
+     *
+     * @return count of each letter, A first
+     */
+    public long[] getUnigrams() {
+        return unigrams.clone();
+    }
+
+    /**
+     * returns a copy of the letter pair counts.
+     *
+     * @return count of each pair, indexed by first * 26 + second
+     */
+    public long[] getBigrams() {
+        return bigrams.clone();
+    }
+
+    /**
+     * Collects counts one character at a time, so they can be gathered while text is being loaded or prepared.
+     */
+    static class Counter {
+        private final long[] unigrams = new long[26];
+        private final long[] bigrams = new long[26 * 26];
+        private int previous = -1;
+
+        /**
+         * Counts a character. Anything that isn't a letter breaks up letter pairs.
+         *
+         * @param c the next character of the text
+         */
+        void add(char c) {
+            int letter = (c | 0x20) - 'a';
+            if (letter >= 0 && letter < 26) {
+                unigrams[letter]++;
+                if (previous >= 0) {
+                    bigrams[previous * 26 + letter]++;
+                }
+                previous = letter;
+            } else {
+                previous = -1;
+            }
+        }
+
+        /**
+         * Finishes counting.
+         *
+         * @return the statistics collected
+         */
+        TextStatistics build() {
+            return new TextStatistics(unigrams, bigrams);
+        }
+    }
+}
@@ -0,0 +1,343 @@
+package uk.ac.aber.dcs.backend;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tries every word in a word list as a vigenere key against a sample of cipher text and keeps the keys whose
+ * decryptions look most like English. Each worker thread scores letters as it decrypts them, without building any
+ * text, and gives up on a key as soon as it can no longer make the top results.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public class VigenereKeySearch {
+    private static final int BATCH_SIZE = 4096;
+    private static final int CHECK_INTERVAL = 32;
+    private static final String[] END_OF_LIST = new String[0];
+    private static final double[] ENGLISH_FREQUENCIES = {8.167, 1.492, 2.782, 4.253, 12.702, 2.228, 2.015, 6.094,
+            6.966, 0.153, 0.772, 4.025, 2.406, 6.749, 7.507, 1.929, 0.095, 5.987, 6.327, 9.056, 2.758, 0.978, 2.360,
+            0.150, 1.974, 0.074};
+
+    private final byte[] sample;
+    // Where each sample letter was in the cipher text, as the cipher moves along the key on every character
+    private final int[] positions;
+    private final int topK;
+    private final int threads;
+    private final float[] logFrequencies = new float[26];
+    private final float bestLetterScore;
+    private QuadgramScorer quadgrams;
+
+    /**
+     * Creates a search over a sample of cipher text. Anything in the sample that isn't a letter isn't scored, but
+     * still counts towards where each letter falls in the key.
+     *
+     * @param cipherText the cipher text sample
+     * @param topK       number of best keys to keep
+     * @param threads    number of worker threads
+     */
+    public VigenereKeySearch(String cipherText, int topK, int threads) {
+        if (topK < 1 || threads < 1) {
+            throw new IllegalArgumentException("Result count and thread count must be at least 1");
+        }
+        this.topK = topK;
+        this.threads = threads;
+
+        byte[] letters = new byte[cipherText.length()];
+        int[] at = new int[cipherText.length()];
+        int length = 0;
+        int letter;
+        for (int i = 0; i < cipherText.length(); i++) {
+            letter = (cipherText.charAt(i) | 0x20) - 'a';
+            if (letter >= 0 && letter < 26) {
+                at[length] = i;
+                letters[length++] = (byte) letter;
+            }
+        }
+        sample = Arrays.copyOf(letters, length);
+        positions = Arrays.copyOf(at, length);
+
+        float best = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < 26; i++) {
+            logFrequencies[i] = (float) Math.log10(ENGLISH_FREQUENCIES[i] / 100);
+            best = Math.max(best, logFrequencies[i]);
+        }
+        bestLetterScore = best;
+    }
+
+    /**
+     * Scores decryptions by their quadgrams instead of their single letters. Quadgrams tell English apart far
+     * better, especially for short samples, at the cost of a larger table to look in.
+     *
+     * @param quadgrams the quadgram scorer, or null to go back to single letters
+     */
+    public void setQuadgrams(QuadgramScorer quadgrams) {
+        this.quadgrams = quadgrams;
+    }
+
+    /**
+     * Reads the word list one line at a time and tries each word as a key. Words containing anything other than
+     * letters are skipped.
+     *
+     * @param wordList file with one candidate key per line
+     * @return the best keys, best first
+     * @throws IOException thrown when the word list cannot be read
+     */
+    public List<KeyScore> search(Path wordList) throws IOException {
+        BlockingQueue<String[]> batches = new ArrayBlockingQueue<>(threads * 4);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<PriorityQueue<KeyScore>>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(pool.submit(() -> runWorker(batches)));
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(wordList, StandardCharsets.ISO_8859_1)) {
+            String[] batch = new String[BATCH_SIZE];
+            int size = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                batch[size++] = line;
+                if (size == BATCH_SIZE) {
+                    hand(batches, batch, workers);
+                    batch = new String[BATCH_SIZE];
+                    size = 0;
+                }
+            }
+            if (size > 0) {
+                hand(batches, Arrays.copyOf(batch, size), workers);
+            }
+            for (int i = 0; i < threads; i++) {
+                hand(batches, END_OF_LIST, workers);
+            }
+
+            // Merge what each worker found
+            PriorityQueue<KeyScore> best = new PriorityQueue<>();
+            for (Future<PriorityQueue<KeyScore>> worker : workers) {
+                for (KeyScore result : worker.get()) {
+                    offer(best, result);
+                }
+            }
+            List<KeyScore> results = new ArrayList<>(best);
+            results.sort(Collections.reverseOrder());
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Key search interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Key search failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Puts a batch on the queue, waiting while the queue is full. A worker only finishes early when it has failed,
+     * so while waiting the workers are checked and a failure is thrown rather than waiting for space forever.
+     *
+     * @param batches queue of candidate batches
+     * @param batch   the batch
+     * @param workers the workers taking batches from the queue
+     * @throws InterruptedException thrown when the search is abandoned
+     * @throws ExecutionException   thrown when a worker has failed
+     */
+    private static void hand(BlockingQueue<String[]> batches, String[] batch,
+                             List<Future<PriorityQueue<KeyScore>>> workers)
+            throws InterruptedException, ExecutionException {
+        while (!batches.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+            for (Future<PriorityQueue<KeyScore>> worker : workers) {
+                if (worker.isDone()) {
+                    worker.get();
+                    throw new ExecutionException(new IllegalStateException("A key search worker stopped early"));
+                }
+            }
+        }
+    }
+
+    /**
+     * Scores batches of candidate keys until the end of the list is reached.
+     *
+     * @param batches queue of candidate batches
+     * @return the best keys this worker saw
+     * @throws InterruptedException thrown when the search is abandoned
+     */
+    private PriorityQueue<KeyScore> runWorker(BlockingQueue<String[]> batches) throws InterruptedException {
+        PriorityQueue<KeyScore> best = new PriorityQueue<>();
+        int[] shifts = new int[16];
+        String[] batch;
+
+        while ((batch = batches.take()) != END_OF_LIST) {
+            for (String candidate : batch) {
+                if (candidate.length() > shifts.length) {
+                    shifts = new int[candidate.length()];
+                }
+                if (!compileKey(candidate, shifts)) {
+                    continue;
+                }
+                float threshold = best.size() < topK ? Float.NEGATIVE_INFINITY : best.peek().getScore();
+                float score = quadgrams == null ? score(shifts, candidate.length(), threshold)
+                        : scoreQuadgrams(shifts, candidate.length(), threshold);
+                if (score > threshold) {
+                    offer(best, new KeyScore(candidate.toUpperCase(), score));
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Turns a candidate key into a shift for each key position.
+     *
+     * @param candidate the candidate key
+     * @param shifts    filled with the shifts
+     * @return false if the candidate is empty or has anything other than letters in it
+     */
+    private boolean compileKey(String candidate, int[] shifts) {
+        int letter;
+        for (int j = 0; j < candidate.length(); j++) {
+            letter = (candidate.charAt(j) | 0x20) - 'a';
+            if (letter < 0 || letter >= 26) {
+                return false;
+            }
+            shifts[j] = letter;
+        }
+        return !candidate.isEmpty();
+    }
+
+    /**
+     * Decrypts the sample with a key and adds up the log probability of each letter. Stops early, returning
+     * negative infinity, once even the best possible remaining letters couldn't beat the threshold.
+     *
+     * @param shifts    the key shifts
+     * @param keyLength number of key letters
+     * @param threshold score needed to make the top results
+     * @return the score, or negative infinity if the key was given up on
+     */
+    private float score(int[] shifts, int keyLength, float threshold) {
+        float score = 0;
+        int letter;
+
+        for (int i = 0; i < sample.length; i++) {
+            letter = sample[i] - shifts[positions[i] % keyLength];
+            if (letter < 0) {
+                letter += 26;
+            }
+            score += logFrequencies[letter];
+            if (i % CHECK_INTERVAL == 0 && score + (sample.length - i - 1) * bestLetterScore <= threshold) {
+                return Float.NEGATIVE_INFINITY;
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Decrypts the sample with a key and adds up the log probability of each quadgram, keeping the index of the
+     * last four letters as it goes. Stops early in the same way as the single letter score.
+     *
+     * @param shifts    the key shifts
+     * @param keyLength number of key letters
+     * @param threshold score needed to make the top results
+     * @return the score, or negative infinity if the key was given up on
+     */
+    private float scoreQuadgrams(int[] shifts, int keyLength, float threshold) {
+        float bestQuadgramScore = quadgrams.getBestScore();
+        float score = 0;
+        int index = 0;
+        int recent = 0;
+        int letter;
+
+        for (int i = 0; i < sample.length; i++) {
+            letter = sample[i] - shifts[positions[i] % keyLength];
+            if (letter < 0) {
+                letter += 26;
+            }
+            index = QuadgramScorer.nextIndex(index, recent, letter);
+            recent = recent << 8 | letter;
+            if (i >= 3) {
+                score += quadgrams.get(index);
+            }
+            // The first quadgram ends on the fourth letter, so only the ones ending after this letter are left
+            if (i % CHECK_INTERVAL == 0
+                    && score + (sample.length - Math.max(i + 1, 3)) * bestQuadgramScore <= threshold) {
+                return Float.NEGATIVE_INFINITY;
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Adds a result to a top-K heap, dropping the worst result when the heap is full.
+     *
+     * @param best   heap with the worst result at the head
+     * @param result the result to add
+     */
+    private void offer(PriorityQueue<KeyScore> best, KeyScore result) {
+        if (best.size() < topK) {
+            best.add(result);
+        } else if (result.compareTo(best.peek()) > 0) {
+            best.poll();
+            best.add(result);
+        }
+    }
+
+    /**
+     * A candidate key and how English its decryption looked. Higher scores are better.
+     */
+    public static class KeyScore implements Comparable<KeyScore> {
+        private final String key;
+        private final float score;
+
+        /**
+         * Creates a scored key.
+         *
+         * @param key   the key
+         * @param score the score
+         */
+        public KeyScore(String key, float score) {
+            this.key = key;
+            this.score = score;
+        }
+
+        /**
+         * returns the key.
+         *
+         * @return key
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * returns the score.
+         *
+         * @return score
+         */
+        public float getScore() {
+            return score;
+        }
+
+        @Override
+        public int compareTo(KeyScore other) {
+            return Float.compare(score, other.score);
+        }
+
+        @Override
+        public String toString() {
+            return key + " (" + score + ")";
+        }
+    }
+}
@@ -0,0 +1,525 @@
+package uk.ac.aber.dcs.backend;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Puts the spaces back into decrypted text. Preparing a text takes out everything but the letters, so a decryption
+ * comes out as one long run of capitals. Each run of letters is split into the words that were most likely to have
+ * made it, choosing the split with dynamic programming over every word in a dictionary. Letters that don't start
+ * any dictionary word are kept together as unknown words.
+ * <p>
+ * The dictionary is a binary model file holding a double-array trie of the words, with the cost of each word, which
+ * is memory mapped rather than read, like a {@link QuadgramScorer} model. Following a letter from one node of the
+ * trie to the next is two array lookups, and no word is longer than {@link #MAX_WORD_LENGTH}, so splitting takes
+ * time in proportion to the length of the text. Text is split a window at a time, so any amount of text can be
+ * streamed through a segmenter.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public class WordSegmenter {
+    public static final int MAX_WORD_LENGTH = 32;
+    private static final int MAGIC = 0x5753474D;
+    private static final int HEADER_SIZE = 16;
+    private static final int WINDOW_SIZE = 1 << 16;
+    // A run still going at the end of a window is only split up to this far from the end, as the next window
+    // could change how the last few words are split
+    private static final int MARGIN = 4 * MAX_WORD_LENGTH;
+    private static final Map<Path, WordSegmenter> openModels = new HashMap<>();
+
+    private final IntBuffer base;
+    private final IntBuffer check;
+    private final FloatBuffer costs;
+    private final int size;
+    private final int maxWordLength;
+    private final float unknownCost;
+
+    /**
+     * Maps a model file.
+     *
+     * @param model the model file
+     * @throws IOException thrown when the file cannot be mapped or is not a dictionary model
+     */
+    private WordSegmenter(Path model) throws IOException {
+        try (FileChannel channel = FileChannel.open(model, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException(model + " is not a dictionary model");
+            }
+            // The mapping stays valid after the channel is closed
+            ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            size = mapped.getInt(4);
+            if (mapped.getInt(0) != MAGIC || size <= 0 || channel.size() != HEADER_SIZE + size * 12L) {
+                throw new IOException(model + " is not a dictionary model");
+            }
+            maxWordLength = mapped.getInt(8);
+            unknownCost = mapped.getFloat(12);
+            base = slice(mapped, HEADER_SIZE).asIntBuffer();
+            check = slice(mapped, HEADER_SIZE + size * 4).asIntBuffer();
+            costs = slice(mapped, HEADER_SIZE + size * 8).asFloatBuffer();
+        }
+    }
+
+    /**
+     * returns the part of a mapped model from a position on, in the model's byte order.
+     *
+     * @param mapped   the mapped model
+     * @param position where the part starts
+     * @return the part
+     */
+    private static ByteBuffer slice(ByteBuffer mapped, int position) {
+        return mapped.duplicate().position(position).slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Returns the segmenter for a model file, mapping it the first time it is asked for. Everything using the same
+     * file shares one segmenter.
+     *
+     * @param model the model file
+     * @return the segmenter
+     * @throws IOException thrown when the model cannot be mapped
+     */
+    public static synchronized WordSegmenter open(Path model) throws IOException {
+        Path canonical = model.toRealPath();
+        WordSegmenter segmenter = openModels.get(canonical);
+        if (segmenter == null) {
+            segmenter = new WordSegmenter(canonical);
+            openModels.put(canonical, segmenter);
+        }
+        return segmenter;
+    }
+
+    /**
+     * Reads a word list and writes it as a model file. Each line holds a word, optionally followed by how often it
+     * is used. Words without a count are counted once, so a plain list of words splits text into as few words as
+     * possible. Words with anything but letters in them, or longer than {@link #MAX_WORD_LENGTH}, are left out.
+     * <p>
+     * A word costs the negative log of how often it is used. An unknown letter costs ten times less likely than the
+     * rarest word, so text is only left unsplit when no dictionary words fit it.
+     *
+     * @param wordList the word list
+     * @param model    where the model is written
+     * @return number of different words in the model
+     * @throws IOException thrown when the word list cannot be read or the model written
+     */
+    public static int build(InputStream wordList, Path model) throws IOException {
+        Map<String, Long> counts = new HashMap<>();
+        long total = 0;
+        String line;
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(wordList, StandardCharsets.ISO_8859_1))) {
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.trim().split("\\s+");
+                String word = fields[0].toLowerCase();
+                if (word.isEmpty() || word.length() > MAX_WORD_LENGTH
+                        || !word.chars().allMatch(WordSegmenter::isAsciiLetter)) {
+                    continue;
+                }
+                long count = fields.length > 1 ? Long.parseLong(fields[1]) : 1;
+                if (count > 0) {
+                    counts.merge(word, count, Long::sum);
+                    total += count;
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Word counts must be whole numbers", e);
+        }
+        if (counts.isEmpty()) {
+            throw new IOException("The word list has no words in it");
+        }
+
+        List<String> words = new ArrayList<>(counts.keySet());
+        Collections.sort(words);
+        float[] wordCosts = new float[words.size()];
+        int maxLength = 0;
+        for (int i = 0; i < wordCosts.length; i++) {
+            wordCosts[i] = (float) Math.log((double) total / counts.get(words.get(i)));
+            maxLength = Math.max(maxLength, words.get(i).length());
+        }
+        float unknown = (float) Math.log(total * 10.0);
+
+        TrieBuilder trie = new TrieBuilder(words, wordCosts);
+        trie.place(0, 0, words.size(), 0);
+        int used = trie.used();
+        ByteBuffer bytes = ByteBuffer.allocate(HEADER_SIZE + used * 12).order(ByteOrder.LITTLE_ENDIAN);
+        bytes.putInt(MAGIC).putInt(used).putInt(maxLength).putFloat(unknown);
+        bytes.asIntBuffer().put(trie.base, 0, used);
+        bytes.position(HEADER_SIZE + used * 4);
+        bytes.asIntBuffer().put(trie.check, 0, used);
+        bytes.position(HEADER_SIZE + used * 8);
+        bytes.asFloatBuffer().put(trie.costs, 0, used);
+        Files.write(model, bytes.array());
+        return words.size();
+    }
+
+    /**
+     * Splits the runs of letters in a text into words, leaving everything else as it is.
+     *
+     * @param text the text
+     * @return the text with a space between each pair of words
+     */
+    public String segment(CharSequence text) {
+        Window window = new Window();
+        StringBuilder result = new StringBuilder(text.length() + text.length() / 4);
+        for (int from = 0; from < text.length(); from += WINDOW_SIZE) {
+            int to = Math.min(text.length(), from + WINDOW_SIZE);
+            for (int i = from; i < to; i++) {
+                window.append(text.charAt(i));
+            }
+            result.append(window.output);
+            window.output.setLength(0);
+        }
+        window.process(true);
+        return result.append(window.output).toString();
+    }
+
+    /**
+     * Wraps a stream so the single byte text written to it is split into words on the way through. Words are
+     * written out a window at a time, and the last of them when the stream is closed.
+     *
+     * @param out the stream to write the split text to
+     * @return the stream to write text to
+     */
+    public OutputStream segmenting(OutputStream out) {
+        return new SegmentingStream(out);
+    }
+
+    /**
+     * Checks whether a character is one of the 26 letters, in either case.
+     *
+     * @param c the character
+     * @return true for a letter
+     */
+    private static boolean isAsciiLetter(int c) {
+        int letter = (c | 0x20) - 'a';
+        return letter >= 0 && letter < 26;
+    }
+
+    /**
+     * The text waiting to be split, and the words split from it but not yet written out. Each segmenting call
+     * has its own window, so one segmenter can be used by any number of threads.
+     */
+    private class Window {
+        private static final byte NONE = 0;
+        private static final byte WORD = 1;
+        private static final byte UNKNOWN = 2;
+
+        private final char[] text = new char[WINDOW_SIZE];
+        private final float[] best = new float[WINDOW_SIZE + 1];
+        private final int[] from = new int[WINDOW_SIZE + 1];
+        private final int[] ends = new int[WINDOW_SIZE + 1];
+        private final StringBuilder output = new StringBuilder(WINDOW_SIZE + WINDOW_SIZE / 4);
+        private int length;
+        // What was written last, so words in a run carried over between windows are still spaced
+        private byte previous = NONE;
+
+        /**
+         * Adds a character to the window, splitting and writing out the window's words when it is full.
+         *
+         * @param c the character
+         */
+        private void append(char c) {
+            if (length == text.length) {
+                process(false);
+            }
+            text[length++] = c;
+        }
+
+        /**
+         * Splits the window's runs of letters into words and writes them to the output. A run still going at the
+         * end of the window is kept back from the last whole word before the margin, unless this is the end of
+         * the text.
+         *
+         * @param last true if no more text is coming
+         */
+        private void process(boolean last) {
+            int i = 0;
+            while (i < length) {
+                if (!isAsciiLetter(text[i])) {
+                    output.append(text[i++]);
+                    previous = NONE;
+                    continue;
+                }
+                int runEnd = i;
+                while (runEnd < length && isAsciiLetter(text[runEnd])) {
+                    runEnd++;
+                }
+                if (runEnd == length && !last) {
+                    int kept = split(i, runEnd, false);
+                    System.arraycopy(text, kept, text, 0, length - kept);
+                    length -= kept;
+                    return;
+                }
+                split(i, runEnd, true);
+                i = runEnd;
+            }
+            length = 0;
+        }
+
+        /**
+         * Finds the cheapest way to split a run of letters into words and writes the words out. For every position
+         * in the run, the trie is followed from there for as long as the letters match a word, and each word found
+         * offers a cheaper way to reach the position after it. Every position can also be reached by one unknown
+         * letter, so there is always a split.
+         *
+         * @param start index of the first letter of the run
+         * @param end   index after its last letter
+         * @param whole true to write the whole run, false to stop at the last word ending before the margin
+         * @return index after the last letter written
+         */
+        private int split(int start, int end, boolean whole) {
+            int n = end - start;
+            Arrays.fill(best, 1, n + 1, Float.POSITIVE_INFINITY);
+            best[0] = 0;
+
+            for (int j = 0; j < n; j++) {
+                float cost = best[j];
+                if (cost + unknownCost < best[j + 1]) {
+                    best[j + 1] = cost + unknownCost;
+                    // Marks an unknown letter
+                    from[j + 1] = ~j;
+                }
+                int node = 0;
+                for (int k = j, limit = Math.min(n, j + maxWordLength); k < limit; k++) {
+                    int next = base.get(node) + ((text[start + k] | 0x20) - 'a');
+                    if (next >= size || check.get(next) != node + 1) {
+                        break;
+                    }
+                    node = next;
+                    float word = costs.get(node);
+                    if (cost + word < best[k + 1]) {
+                        best[k + 1] = cost + word;
+                        from[k + 1] = j;
+                    }
+                }
+            }
+
+            // Walks back from the end of the run to find where each word ends
+            int words = 0;
+            for (int k = n; k > 0; k = from[k] < 0 ? ~from[k] : from[k]) {
+                ends[words++] = k;
+            }
+            int limit = whole ? n : n - MARGIN;
+            int wordStart = 0;
+            for (int w = words - 1; w >= 0 && ends[w] <= limit; w--) {
+                int wordEnd = ends[w];
+                byte kind = from[wordEnd] < 0 ? UNKNOWN : WORD;
+                // Unknown letters next to each other are kept together as one word
+                if (previous != NONE && !(previous == UNKNOWN && kind == UNKNOWN)) {
+                    output.append(' ');
+                }
+                output.append(text, start + wordStart, wordEnd - wordStart);
+                previous = kind;
+                wordStart = wordEnd;
+            }
+            return start + wordStart;
+        }
+    }
+
+    /**
+     * A stream that splits the single byte text written to it into words on the way through.
+     */
+    private class SegmentingStream extends OutputStream {
+        private final OutputStream out;
+        private final Window window = new Window();
+        private byte[] encoded = new byte[0];
+
+        /**
+         * Creates a stream writing to another stream.
+         *
+         * @param out the stream the split text is written to
+         */
+        private SegmentingStream(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            window.append((char) (b & 0xFF));
+            drain();
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            for (int i = offset, end = offset + length; i < end; i++) {
+                window.append((char) (data[i] & 0xFF));
+            }
+            drain();
+        }
+
+        /**
+         * Passes on a flush. Text still in the window stays there, as the words at its end may not be finished.
+         *
+         * @throws IOException thrown when the stream cannot be flushed
+         */
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+
+        /**
+         * Splits and writes the rest of the text, and closes the stream underneath.
+         *
+         * @throws IOException thrown when the text cannot be written
+         */
+        @Override
+        public void close() throws IOException {
+            try {
+                window.process(true);
+                drain();
+            } finally {
+                out.close();
+            }
+        }
+
+        /**
+         * Writes out any words the window has split.
+         *
+         * @throws IOException thrown when the words cannot be written
+         */
+        private void drain() throws IOException {
+            StringBuilder output = window.output;
+            if (output.length() == 0) {
+                return;
+            }
+            if (encoded.length < output.length()) {
+                encoded = new byte[output.length()];
+            }
+            for (int i = 0; i < output.length(); i++) {
+                encoded[i] = (byte) output.charAt(i);
+            }
+            out.write(encoded, 0, output.length());
+            output.setLength(0);
+        }
+    }
+
+    /**
+     * Lays out a sorted list of words as a double-array trie. Node {@code s} has a child for letter {@code c} at
+     * {@code base[s] + c} when {@code check[base[s] + c] == s + 1}, so a free slot has a check of 0. Each node's
+     * children are placed at the first base where all of their slots are free.
+     */
+    private static class TrieBuilder {
+        private final List<String> words;
+        private final float[] wordCosts;
+        private int[] base = new int[1 << 16];
+        private int[] check = new int[1 << 16];
+        private float[] costs = new float[1 << 16];
+        // Every slot before this one is taken
+        private int firstFree = 1;
+        private int highest;
+
+        /**
+         * Creates an empty trie for a list of words.
+         *
+         * @param words     the words, sorted
+         * @param wordCosts the cost of each word
+         */
+        private TrieBuilder(List<String> words, float[] wordCosts) {
+            this.words = words;
+            this.wordCosts = wordCosts;
+            Arrays.fill(costs, Float.POSITIVE_INFINITY);
+            // The root is never anyone's child
+            check[0] = -1;
+        }
+
+        /**
+         * Places the children of a node, then their children, for the words sharing the node's letters.
+         *
+         * @param node  the node
+         * @param lo    index of the first word under the node
+         * @param hi    index after the last word under the node
+         * @param depth number of letters leading to the node
+         */
+        private void place(int node, int lo, int hi, int depth) {
+            // Sorting puts the word ending at this node first
+            if (lo < hi && words.get(lo).length() == depth) {
+                costs[node] = wordCosts[lo++];
+            }
+            if (lo == hi) {
+                return;
+            }
+
+            int[] letters = new int[26];
+            int[] starts = new int[27];
+            int count = 0;
+            for (int i = lo; i < hi; i++) {
+                int letter = words.get(i).charAt(depth) - 'a';
+                if (count == 0 || letters[count - 1] != letter) {
+                    letters[count] = letter;
+                    starts[count++] = i;
+                }
+            }
+            starts[count] = hi;
+
+            int b = Math.max(1, firstFree - letters[0]);
+            while (!fits(b, letters, count)) {
+                b++;
+            }
+            base[node] = b;
+            for (int i = 0; i < count; i++) {
+                check[b + letters[i]] = node + 1;
+                highest = Math.max(highest, b + letters[i]);
+            }
+            while (check[firstFree] != 0) {
+                firstFree++;
+            }
+            for (int i = 0; i < count; i++) {
+                place(b + letters[i], starts[i], starts[i + 1], depth + 1);
+            }
+        }
+
+        /**
+         * Checks whether a node's children would all land on free slots from a base, growing the arrays if the
+         * slots are past their end.
+         *
+         * @param b       the base
+         * @param letters the children's letters, in order
+         * @param count   number of children
+         * @return true if every slot is free
+         */
+        private boolean fits(int b, int[] letters, int count) {
+            if (b + 26 >= check.length) {
+                int length = check.length * 2;
+                base = Arrays.copyOf(base, length);
+                check = Arrays.copyOf(check, length);
+                int old = costs.length;
+                costs = Arrays.copyOf(costs, length);
+                Arrays.fill(costs, old, length, Float.POSITIVE_INFINITY);
+            }
+            for (int i = 0; i < count; i++) {
+                if (check[b + letters[i]] != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * returns the number of slots up to the last one used.
+         *
+         * @return slots used
+         */
+        private int used() {
+            return highest + 1;
+        }
+    }
+}
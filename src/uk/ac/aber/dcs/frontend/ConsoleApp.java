@@ -1,239 +1,1073 @@
-package uk.ac.aber.dcs.frontend;
-
-import uk.ac.aber.dcs.backend.CaesarCipher;
-import uk.ac.aber.dcs.backend.CipherEncryptor;
-import uk.ac.aber.dcs.backend.KeyedCaesarCipher;
-import uk.ac.aber.dcs.backend.VigenereCipher;
-
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.util.Scanner;
-
-/**
- * The console application
- *
- * @author Jamie Gregory [jag73]
- * @version 1.0
- */
-
-public class ConsoleApp {
-
-    private CipherEncryptor cipherEncryptor;
-    private Scanner read;
-    private String inputFile;
-
-    // starts the program - runs setup and menu
-    public static void main(String[] args) {
-        ConsoleApp app = new ConsoleApp();
-        app.setUp();
-        app.runMenu();
-    }
-
-    //Creates the scanner and cipher object. Loads any key or shift the cipher may need
-    private void setUp() {
-        read = new Scanner(System.in);
-        cipherEncryptor = new CaesarCipher();
-        changeInput();
-        try {
-            updateCipher();
-        } catch (IOException e) {
-            System.out.println("Error: " + e);
-        }
-    }
-
-
-    private void printMenu() {
-        System.out.println("1: Choose a cipher (Current: " + cipherEncryptor.getCipherName() + ")");
-        System.out.println("2: Edit cipher key");
-        System.out.println("3: Display key");
-        System.out.println("4: Change input file");
-        System.out.println("5: Display input text");
-        System.out.println("6: Encrypt input file");
-        System.out.println("7: Display cipher text");
-        System.out.println("8: Save encrypted text to file");
-        System.out.println("9: Input cipher text");
-        System.out.println("10: Decrypt cipher text");
-        System.out.println("E: Exit");
-
-    }
-
-    /**
-     * runs the menu system from main. Allows for the choosing of actions.
-     */
-    private void runMenu() {
-        String input;
-
-        do { //Asks the user for input
-            printMenu();
-            System.out.println("Choose an action: ");
-            input = read.nextLine().toUpperCase();
-
-            switch (input) {
-                case "1": // Choose a cipher
-                    chooseCipher();
-                    break;
-                case "2": // Edit Cipher key
-                    setKey();
-                    break;
-                case "3": // Display key
-                    displayKey();
-                    break;
-                case "4": // Change input file
-                    changeInput();
-                    break;
-                case "5": // Display input text
-                    printPreparedText();
-                    break;
-                case "6": // Encrypt input text
-                    encryptText();
-                    break;
-                case "7": // Display cipher text
-                    printCipherText();
-                    break;
-                case "8": // Save encrypted text to file
-                    saveCipherText();
-                    break;
-                case "9": // Input cipher text
-                    inputCipherText();
-                    break;
-                case "10": // Decrypt cipher text
-                    decryptText();
-                    break;
-                case "E": // Exit
-                    break;
-            }
-
-        } while (!input.equals("E"));
-    }
-
-    /**
-     * Prompts the user to input a selection of cipher, which is then created and prepared for use for encryption/decryption
-     */
-    private void chooseCipher() {
-        String choice;
-        System.out.println("Which cipher would you like to use? (1. Caesar, 2. Keyed Caesar or 3. Vigenere)");
-        choice = read.nextLine().toUpperCase();
-
-        switch (choice) {
-            case "CAESAR", "1" -> {
-                cipherEncryptor = new CaesarCipher();
-                cipherEncryptor.setRawTextFile(inputFile);
-            }
-            case "KEYED CAESAR", "2" -> {
-                cipherEncryptor = new KeyedCaesarCipher();
-                cipherEncryptor.setRawTextFile(inputFile);
-            }
-            case "VIGENERE", "3" -> {
-                cipherEncryptor = new VigenereCipher();
-                cipherEncryptor.setRawTextFile(inputFile);
-            }
-            default -> System.out.println("Not a valid choice");
-        }
-        try {
-            updateCipher();
-        } catch (IOException e) {
-            System.out.println("Error updating ciphers: " + e);
-        }
-
-    }
-
-    /**
-     * Allows the user to choose a text file to input.
-     */
-    private void changeInput() {
-        //Takes the user input
-        System.out.println("Please enter a filename: ");
-        inputFile = read.nextLine();
-        cipherEncryptor.setRawTextFile(inputFile);
-        //Attempts to load the input files and prepare the text.
-        try {
-            cipherEncryptor.loadRawText();
-            cipherEncryptor.prepareText();
-        } catch (FileNotFoundException e) {
-            System.err.println("File not found");
-        } catch (IOException e) {
-            System.err.println("Error occurred when attempting to open file: " + cipherEncryptor.getRawTextFile());
-            System.out.println(e.getMessage());
-        }
-
-    }
-
-    /**
-     * Allows the user to choose an encrypted text file to input.
-     */
-    private void inputCipherText() {
-        //Takes the user input
-        System.out.println("Please enter a filename: ");
-        cipherEncryptor.setCipherTextFile(read.nextLine());
-        //Attempts to load the input text
-        try {
-            cipherEncryptor.loadCipherText();
-        } catch (FileNotFoundException e) {
-            System.err.println("File not found");
-        } catch (IOException e) {
-            System.err.println("Error occurred when attempting to open file: " + cipherEncryptor.getRawTextFile());
-            System.out.println(e.getMessage());
-        }
-
-    }
-
-    private void saveCipherText() {
-        System.out.println("Please enter a filename: ");
-        cipherEncryptor.saveCipherText(read.nextLine());
-    }
-
-    private void printCipherText() {
-        System.out.println("Encrypted Text: " + cipherEncryptor.getCipherText());
-    }
-
-    private void setKey() {
-        cipherEncryptor.setCipherKey();
-        displayKey();
-    }
-
-    private void displayKey() {
-        try {
-            cipherEncryptor.loadKey();
-            cipherEncryptor.printKey();
-        } catch (IOException e) {
-            System.err.println(e);
-        }
-    }
-
-    private void printPreparedText() {
-        System.out.println(cipherEncryptor.getPreparedText());
-    }
-
-    /**
-     * Updates the ciphers information to ensure it is up to date - This includes raw text, prepared text and keys.
-     *
-     * @throws IOException An error can arise when updating a cipher - Loading the text is a common culprit
-     */
-    private void updateCipher() throws IOException {
-        try {
-            cipherEncryptor.loadRawText();
-            cipherEncryptor.prepareText();
-            cipherEncryptor.loadKey();
-        } catch (IOException e) {
-            System.out.println("Error: " + e);
-        }
-    }
-
-    /**
-     * Runs the encryption algorithm of a chosen cipher. Encrypts prepared text and saves to cipher text.
-     */
-    private void encryptText() {
-        if (cipherEncryptor.getPreparedText() == null) {
-            System.out.println("Nothing to encrypt");
-        } else {
-            cipherEncryptor.setCipherText(cipherEncryptor.encrypt(cipherEncryptor.getPreparedText()));
-        }
-    }
-
-    /**
-     * Runs the decryption algorithm for a chosen cipher. Prints the result to console.
-     */
-    private void decryptText() {
-        cipherEncryptor.decrypt();
-    }
-}
+package uk.ac.aber.dcs.frontend;
+
+import uk.ac.aber.dcs.backend.AllocationCheck;
+import uk.ac.aber.dcs.backend.AutokeyCipher;
+import uk.ac.aber.dcs.backend.CaesarCipher;
+import uk.ac.aber.dcs.backend.CipherArchive;
+import uk.ac.aber.dcs.backend.CipherEncryptor;
+import uk.ac.aber.dcs.backend.CipherFuzzer;
+import uk.ac.aber.dcs.backend.CipherPipeline;
+import uk.ac.aber.dcs.backend.ColumnarTranspositionCipher;
+import uk.ac.aber.dcs.backend.FolderWatcher;
+import uk.ac.aber.dcs.backend.KasiskiExamination;
+import uk.ac.aber.dcs.backend.KeyedCaesarCipher;
+import uk.ac.aber.dcs.backend.MessageBatch;
+import uk.ac.aber.dcs.backend.ProgressListener;
+import uk.ac.aber.dcs.backend.QuadgramScorer;
+import uk.ac.aber.dcs.backend.RunningKeyCipher;
+import uk.ac.aber.dcs.backend.SeekableCipherFile;
+import uk.ac.aber.dcs.backend.ShardCoordinator;
+import uk.ac.aber.dcs.backend.ShardWorker;
+import uk.ac.aber.dcs.backend.VigenereCipher;
+import uk.ac.aber.dcs.backend.VigenereKeySearch;
+import uk.ac.aber.dcs.backend.WordSegmenter;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Scanner;
+
+/**
+ * The console application
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+
+public class ConsoleApp {
+
+    // Characters of lines sent to the cipher at once in --lines mode
+    private static final int LINE_BATCH_SIZE = 1 << 22;
+
+    private CipherEncryptor cipherEncryptor;
+    private Scanner read;
+    private String inputFile;
+    // Splits decrypted text into words, null until a dictionary is loaded
+    private WordSegmenter segmenter;
+
+    // starts the program - runs setup and menu, or runs as a filter when given options
+    public static void main(String[] args) {
+        ConsoleApp app = new ConsoleApp();
+        if (args.length > 0) {
+            // Only the mode is recorded, the other options can hold keys
+            UserActionEvent action = new UserActionEvent("Console", args[0], null);
+            String outcome = "Failed";
+            int status;
+            try {
+                status = switch (args[0]) {
+                    case "--attack" -> app.runKeySearch(args);
+                    case "--worker" -> app.runWorker();
+                    case "--kasiski" -> app.runKasiski(args);
+                    case "--quadgrams" -> app.runQuadgrams(args);
+                    case "--fuzz" -> app.runFuzzer(args);
+                    case "--alloc-check" -> app.runAllocationCheck(args);
+                    case "--dictionary" -> app.runDictionary(args);
+                    default -> app.runFilter(args);
+                };
+                outcome = status == 0 ? "Completed" : "Exit status " + status;
+            } finally {
+                action.finish(outcome);
+            }
+            System.exit(status);
+        }
+        app.setUp();
+        app.runMenu();
+    }
+
+    /**
+     * Runs the app as a filter, streaming standard input through the chosen cipher to standard output so it can
+     * be used in a shell pipeline. Keys not given on the command line are loaded from the cipher's key location.
+     *
+     * @param args --encrypt or --decrypt with a cipher name, and optionally --shift, --key, --key-location, --file
+     *             to read a file instead of standard input, and --range with an offset and length to decrypt only
+     *             part of the file, --stats to print how busy each pipeline stage was, --progress to show how
+     *             far the job has got on standard error, --lines to encrypt each line as a separate message
+     *             starting from the beginning of the key, --segment with a dictionary model to split the decrypted
+     *             text into words, or --watch to keep
+     *             processing files dropped into a folder, or --pack and --unpack to use an archive, or
+     *             --distribute to split files into shards for worker processes. The columnar cipher transposes the
+     *             whole input at once unless given --blocks, which streams it in the cipher's block format instead,
+     *             and which it needs to watch a folder or use an archive
+     * @return exit status
+     */
+    private int runFilter(String[] args) {
+        boolean decrypt = false;
+        String shift = null;
+        String key = null;
+        String keyLocation = null;
+        String file = null;
+        String rangeOffset = null;
+        String rangeLength = null;
+        boolean stats = false;
+        boolean progress = false;
+        boolean lines = false;
+        boolean blocks = false;
+        String segment = null;
+        String watch = null;
+        String doneFolder = null;
+        String failedFolder = null;
+        String workers = null;
+        String archive = null;
+        String distribute = null;
+        String shardSize = null;
+        CipherEncryptor substitution = null;
+        List<String> entries = new ArrayList<>();
+        // Options can come in any order, so the cipher is only checked once they have all been read
+        boolean valid = true;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--encrypt", "--decrypt" -> {
+                        decrypt = args[i].equals("--decrypt");
+                        cipherEncryptor = createCipher(args[++i]);
+                        valid = cipherEncryptor != null;
+                    }
+                    case "--shift" -> shift = args[++i];
+                    case "--key" -> key = args[++i];
+                    case "--key-location" -> keyLocation = args[++i];
+                    case "--file" -> file = args[++i];
+                    case "--with" -> {
+                        substitution = createCipher(args[++i]);
+                        valid = substitution != null;
+                    }
+                    case "--stats" -> stats = true;
+                    case "--progress" -> progress = true;
+                    case "--lines" -> lines = true;
+                    case "--blocks" -> blocks = true;
+                    case "--segment" -> segment = args[++i];
+                    case "--watch" -> watch = args[++i];
+                    case "--done" -> doneFolder = args[++i];
+                    case "--failed" -> failedFolder = args[++i];
+                    case "--workers" -> workers = args[++i];
+                    case "--pack", "--unpack" -> {
+                        decrypt = args[i].equals("--unpack");
+                        archive = args[++i];
+                        while (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                            entries.add(args[++i]);
+                        }
+                    }
+                    case "--distribute" -> {
+                        distribute = args[++i];
+                        while (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                            entries.add(args[++i]);
+                        }
+                    }
+                    case "--shard-size" -> shardSize = args[++i];
+                    case "--range" -> {
+                        rangeOffset = args[++i];
+                        rangeLength = args[++i];
+                    }
+                    default -> valid = false;
+                }
+                if (!valid) {
+                    break;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            valid = false;
+        }
+        if (valid && cipherEncryptor != null && shift != null
+                && !(cipherEncryptor instanceof CaesarCipher || cipherEncryptor instanceof KeyedCaesarCipher)) {
+            System.err.println("The " + cipherEncryptor.getCipherName() + " doesn't use a shift");
+            return 2;
+        }
+        if (valid && key != null && cipherEncryptor instanceof CaesarCipher) {
+            System.err.println("The " + cipherEncryptor.getCipherName() + " doesn't use a key, only a shift");
+            return 2;
+        }
+        if (!valid || cipherEncryptor == null || (rangeOffset != null && (!decrypt || file == null))
+                || (segment != null && (!decrypt || archive != null || distribute != null || watch != null))
+                || (substitution != null && !(cipherEncryptor instanceof ColumnarTranspositionCipher))
+                || (blocks && (!(cipherEncryptor instanceof ColumnarTranspositionCipher) || lines))) {
+            System.err.println("Usage: ConsoleApp --encrypt|--decrypt caesar|keyed|vigenere [--shift n] [--key k] "
+                    + "[--key-location path] [--file path [--range offset length]] [--stats] [--progress]");
+            System.err.println("       ConsoleApp --decrypt cipher [key options] [--file path [--range offset length]] "
+                    + "[--lines] --segment dictionaryModel");
+            System.err.println("       ConsoleApp --encrypt|--decrypt cipher [key options] --lines [--file path] "
+                    + "[--progress]");
+            System.err.println("       ConsoleApp --encrypt|--decrypt columnar [--key k] [--with substitution-cipher] "
+                    + "[--blocks] ...");
+            System.err.println("       ConsoleApp --encrypt|--decrypt cipher [key options] --watch inbox [--done folder] "
+                    + "[--failed folder] [--workers n]");
+            System.err.println("       ConsoleApp --encrypt cipher [key options] --pack archive files... [--workers n]");
+            System.err.println("       ConsoleApp --decrypt cipher [key options] --unpack archive [entries...]");
+            System.err.println("       ConsoleApp --encrypt|--decrypt cipher [key options] --distribute output inputs... "
+                    + "[--workers n] [--shard-size bytes] [--progress]");
+            return 2;
+        }
+        if (cipherEncryptor instanceof ColumnarTranspositionCipher && !blocks && (archive != null || watch != null)) {
+            System.err.println("The " + cipherEncryptor.getCipherName() + " can only stream files in its block "
+                    + "format, add --blocks");
+            return 2;
+        }
+
+        try {
+            if (keyLocation != null) {
+                cipherEncryptor.setKeyLocation(keyLocation);
+            }
+            // The keyed caesar cipher needs both a key and a shift, the others need one or the other
+            if ((shift == null && key == null)
+                    || (cipherEncryptor instanceof KeyedCaesarCipher && (shift == null || key == null))) {
+                cipherEncryptor.loadKeyStrictly();
+            }
+            if (shift != null) {
+                cipherEncryptor.setShift(Math.floorMod(Integer.parseInt(shift), 26));
+            }
+            if (key != null) {
+                try {
+                    cipherEncryptor.setKey(key);
+                } catch (IllegalArgumentException e) {
+                    System.err.println(e.getMessage());
+                    return 2;
+                }
+            }
+            if (substitution != null) {
+                // The substitution cipher uses the key saved at its own key location
+                substitution.loadKeyStrictly();
+                ((ColumnarTranspositionCipher) cipherEncryptor).setSubstitution(substitution);
+            }
+            if (progress) {
+                cipherEncryptor.setProgressListener(new ProgressPrinter());
+            }
+
+            if (archive != null) {
+                int workerCount = workers == null ? Runtime.getRuntime().availableProcessors()
+                        : Integer.parseInt(workers);
+                runArchive(decrypt, Paths.get(archive), entries, workerCount);
+                return 0;
+            }
+            if (distribute != null) {
+                int workerCount = workers == null ? Runtime.getRuntime().availableProcessors()
+                        : Integer.parseInt(workers);
+                int size = shardSize == null ? ShardCoordinator.DEFAULT_SHARD_SIZE : Integer.parseInt(shardSize);
+                runDistributed(decrypt, Paths.get(distribute), entries, workerCount, size);
+                return 0;
+            }
+            if (watch != null) {
+                runWatcher(decrypt, Paths.get(watch), doneFolder, failedFolder, workers);
+                return 0;
+            }
+
+            OutputStream out = new FileOutputStream(FileDescriptor.out);
+            if (segment != null) {
+                // Words are split on the way out, a window at a time
+                out = WordSegmenter.open(Paths.get(segment)).segmenting(out);
+            }
+            if (lines) {
+                InputStream in = file == null ? new FileInputStream(FileDescriptor.in) : new FileInputStream(file);
+                runLines(decrypt, in, out);
+                return 0;
+            }
+
+            if (rangeOffset != null) {
+                // Decrypt just the requested part of the file
+                try (SeekableCipherFile cipherFile = new SeekableCipherFile(Paths.get(file), cipherEncryptor)) {
+                    ByteBuffer buffer = ByteBuffer.allocate(CipherEncryptor.STREAM_BUFFER_SIZE);
+                    long offset = Long.parseLong(rangeOffset);
+                    long end = offset + Long.parseLong(rangeLength);
+                    while (offset < end) {
+                        buffer.clear().limit((int) Math.min(buffer.capacity(), end - offset));
+                        if (cipherFile.read(buffer, offset) < 0) {
+                            break;
+                        }
+                        out.write(buffer.array(), 0, buffer.position());
+                        offset += buffer.position();
+                    }
+                }
+                // Writes out the last words when segmenting
+                out.close();
+                return 0;
+            }
+
+            InputStream in = file == null ? new FileInputStream(FileDescriptor.in) : new FileInputStream(file);
+            if (cipherEncryptor instanceof ColumnarTranspositionCipher && !blocks) {
+                // The whole input is one transposition, the same as in the app, so it can't be streamed
+                // Copied rather than read all at once, which fails on a pipe
+                ByteArrayOutputStream input = new ByteArrayOutputStream();
+                in.transferTo(input);
+                in.close();
+                String text = input.toString(StandardCharsets.ISO_8859_1);
+                text = decrypt ? cipherEncryptor.decrypt(text) : cipherEncryptor.encrypt(text);
+                out.write(text.getBytes(StandardCharsets.ISO_8859_1));
+                out.close();
+                return 0;
+            }
+            // Reading, the cipher and writing overlap on separate threads
+            CipherPipeline pipeline = new CipherPipeline(cipherEncryptor, decrypt);
+            pipeline.run(in, out);
+            out.close();
+            if (stats) {
+                System.err.println(pipeline);
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Incorrect input type. Required: int");
+            return 2;
+        } catch (IOException e) {
+            System.err.println("Error: " + e);
+            return 1;
+        }
+        return 0;
+    }
+
+    /**
+     * Packs files into an archive, or lists an archive's entries or writes them to standard output.
+     *
+     * @param unpack  true to unpack, false to pack
+     * @param archive the archive file
+     * @param entries the files to pack, or the entries to unpack with none meaning list every entry
+     * @param workers number of files encrypted at once when packing
+     * @throws IOException thrown when the archive or a file cannot be used
+     */
+    private void runArchive(boolean unpack, Path archive, List<String> entries, int workers) throws IOException {
+        try (CipherArchive cipherArchive = new CipherArchive(archive, cipherEncryptor)) {
+            if (!unpack) {
+                List<Path> files = new ArrayList<>();
+                for (String entry : entries) {
+                    files.add(Paths.get(entry));
+                }
+                cipherArchive.append(files, workers);
+            } else if (entries.isEmpty()) {
+                for (String name : cipherArchive.getNames()) {
+                    System.out.println(name + "\t" + cipherArchive.getSize(name));
+                }
+            } else {
+                for (String name : entries) {
+                    System.out.write(cipherArchive.extract(name));
+                }
+                System.out.flush();
+            }
+        }
+    }
+
+    /**
+     * Encrypts or decrypts each line of the input as its own message, each from the start of the key, writing them
+     * one per line. Lines are read into batches of at most {@link #LINE_BATCH_SIZE} characters so the whole input
+     * is never held at once, and each batch is handed to the cipher in one call.
+     *
+     * @param decrypt true to decrypt, false to encrypt
+     * @param in      the input
+     * @param out     the output, closed when every line is written
+     * @throws IOException thrown when the input can't be read or the output written
+     */
+    private void runLines(boolean decrypt, InputStream in, OutputStream out) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.ISO_8859_1));
+             Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.ISO_8859_1),
+                     CipherEncryptor.STREAM_BUFFER_SIZE)) {
+            List<String> messages = new ArrayList<>();
+            int batchLength = 0;
+            String line = reader.readLine();
+            while (line != null) {
+                messages.add(line);
+                batchLength += line.length();
+                line = reader.readLine();
+                if (line == null || batchLength >= LINE_BATCH_SIZE) {
+                    MessageBatch batch = MessageBatch.of(messages);
+                    batch = decrypt ? cipherEncryptor.decrypt(batch) : cipherEncryptor.encrypt(batch);
+                    for (int i = 0; i < batch.size(); i++) {
+                        writer.write(batch.getText(), batch.start(i), batch.length(i));
+                        writer.write('\n');
+                    }
+                    messages.clear();
+                    batchLength = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Keeps running the current cipher over every file dropped into the inbox until the app is stopped. Finished
+     * files go into a done folder and files that fail go into a failed folder, both next to the inbox by default.
+     *
+     * @param decrypt      true to decrypt, false to encrypt
+     * @param inbox        the folder to watch
+     * @param doneFolder   where finished files go, or null for the default
+     * @param failedFolder where failed files go, or null for the default
+     * @param workers      number of files processed at once, or null for one per processor
+     * @throws IOException thrown when the folders cannot be used
+     */
+    private void runWatcher(boolean decrypt, Path inbox, String doneFolder, String failedFolder, String workers)
+            throws IOException {
+        Path parent = inbox.toAbsolutePath().getParent();
+        Path done = doneFolder == null ? parent.resolve("done") : Paths.get(doneFolder);
+        Path failed = failedFolder == null ? parent.resolve("failed") : Paths.get(failedFolder);
+        Path journal = parent.resolve(inbox.getFileName() + ".journal");
+        int workerCount = workers == null ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(workers);
+
+        FolderWatcher watcher = new FolderWatcher(cipherEncryptor, decrypt, inbox, done, failed, journal,
+                workerCount, 1000);
+        // Let files being processed finish when the app is stopped
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                System.err.println("Error: " + e);
+            }
+        }));
+        System.err.println("Watching " + inbox + ", press Ctrl+C to stop");
+        watcher.run();
+    }
+
+    /**
+     * Splits the inputs into shards and has them transformed by worker processes. A single input is written to the
+     * output file, several inputs are written into the output folder.
+     *
+     * @param decrypt     true to decrypt, false to encrypt
+     * @param output      the output file or folder
+     * @param inputs      the files to transform
+     * @param workerCount number of worker processes
+     * @param shardSize   bytes in each shard
+     * @throws IOException thrown when the files cannot be used or the job fails
+     */
+    private void runDistributed(boolean decrypt, Path output, List<String> inputs, int workerCount, int shardSize)
+            throws IOException {
+        // Workers are this app started again with --worker, using the same Java and class path
+        List<String> workerCommand = List.of(Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), ConsoleApp.class.getName(), "--worker");
+        List<Path> files = new ArrayList<>();
+        for (String input : inputs) {
+            files.add(Paths.get(input));
+        }
+
+        long start = System.nanoTime();
+        long bytes;
+        try (ShardCoordinator coordinator = new ShardCoordinator(cipherEncryptor, decrypt, workerCommand, workerCount,
+                shardSize)) {
+            bytes = files.size() == 1 ? coordinator.run(files.get(0), output) : coordinator.runAll(files, output);
+            System.err.printf("Transformed %d bytes in %.2fs with %d workers, %d restarts%n", bytes,
+                    (System.nanoTime() - start) / 1e9, workerCount, coordinator.getRestarts());
+        }
+    }
+
+    /**
+     * Runs as a shard worker for another instance of the app. Prints the port it is listening on, then serves
+     * shards until its standard input is closed, which happens when the coordinator exits.
+     *
+     * @return exit status
+     */
+    private int runWorker() {
+        try (ShardWorker worker = new ShardWorker(0)) {
+            Thread parentWatch = new Thread(() -> {
+                try {
+                    while (System.in.read() >= 0) {
+                        // Nothing is sent on standard input, it only closes
+                    }
+                } catch (IOException e) {
+                    // Treated the same as the coordinator going away
+                }
+                System.exit(0);
+            }, "shard-worker-parent");
+            parentWatch.setDaemon(true);
+            parentWatch.start();
+
+            System.out.println("port " + worker.getPort());
+            System.out.flush();
+            worker.run();
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Error: " + e);
+            return 1;
+        }
+    }
+
+    /**
+     * Tries every word in a word list as a vigenere key against a cipher text file and prints the best keys.
+     *
+     * @param args --attack with a word list and a cipher text file, and optionally --top, --threads and --model to
+     *             score with a quadgram model
+     * @return exit status
+     */
+    private int runKeySearch(String[] args) {
+        Path wordList;
+        Path cipherTextFile;
+        int top = 10;
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path model = null;
+        try {
+            wordList = Paths.get(args[1]);
+            cipherTextFile = Paths.get(args[2]);
+            for (int i = 3; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--top" -> top = Integer.parseInt(args[++i]);
+                    case "--threads" -> threads = Integer.parseInt(args[++i]);
+                    case "--model" -> model = Paths.get(args[++i]);
+                    default -> throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            // Only the options are read in here, so errors from the search itself aren't mistaken for bad options
+            System.err.println("Usage: ConsoleApp --attack wordList cipherTextFile [--top n] [--threads n] "
+                    + "[--model quadgramModel]");
+            return 2;
+        }
+
+        try {
+            String cipherText = Files.readString(cipherTextFile, StandardCharsets.ISO_8859_1);
+            long start = System.nanoTime();
+            VigenereKeySearch search = new VigenereKeySearch(cipherText, top, threads);
+            if (model != null) {
+                search.setQuadgrams(QuadgramScorer.open(model));
+            }
+            List<VigenereKeySearch.KeyScore> results = search.search(wordList);
+            System.err.printf("Searched in %.2fs%n", (System.nanoTime() - start) / 1e9);
+            for (VigenereKeySearch.KeyScore result : results) {
+                System.out.println(result);
+            }
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Error: " + e);
+            return 1;
+        }
+    }
+
+    /**
+     * Builds a quadgram model from a corpus of English text, or measures how fast a model scores a text file.
+     *
+     * @param args --quadgrams build with a corpus and model file, or --quadgrams bench with a model file, a text
+     *             file and optionally --rounds for the number of times the text is scored
+     * @return exit status
+     */
+    private int runQuadgrams(String[] args) {
+        boolean build;
+        Path first;
+        Path second;
+        int rounds = 20;
+        try {
+            build = args[1].equals("build");
+            if (!build && !args[1].equals("bench")) {
+                throw new IllegalArgumentException(args[1]);
+            }
+            first = Paths.get(args[2]);
+            second = Paths.get(args[3]);
+            if (!build && args.length > 5 && args[4].equals("--rounds")) {
+                rounds = Integer.parseInt(args[5]);
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Usage: ConsoleApp --quadgrams build corpusFile modelFile");
+            System.err.println("       ConsoleApp --quadgrams bench modelFile textFile [--rounds n]");
+            return 2;
+        }
+
+        try {
+            if (build) {
+                long count;
+                try (InputStream in = Files.newInputStream(first)) {
+                    count = QuadgramScorer.build(in, second);
+                }
+                System.err.println("Counted " + count + " quadgrams");
+                return 0;
+            }
+
+            long start = System.nanoTime();
+            QuadgramScorer scorer = QuadgramScorer.open(first);
+            System.err.printf("Opened model in %.2fms%n", (System.nanoTime() - start) / 1e6);
+            byte[] text = Files.readAllBytes(second);
+
+            // The first round warms up the JIT and pages in the model
+            double score = scorer.score(text, 0, text.length);
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                score = scorer.score(text, 0, text.length);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Score %.1f, %.1f MB/s%n", score, (double) text.length * rounds / seconds / 1e6);
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Error: " + e);
+            return 1;
+        }
+    }
+
+    /**
+     * Builds a dictionary model from a word list, or splits the text in a file or standard input into words with
+     * one, writing the result to standard output.
+     *
+     * @param args --dictionary build with a word list and model file, or --dictionary segment with a model file and
+     *             optionally a text file
+     * @return exit status
+     */
+    private int runDictionary(String[] args) {
+        boolean build;
+        Path first;
+        Path second = null;
+        try {
+            build = args[1].equals("build");
+            if (!build && !args[1].equals("segment")) {
+                throw new IllegalArgumentException(args[1]);
+            }
+            first = Paths.get(args[2]);
+            if (build || args.length > 3) {
+                second = Paths.get(args[3]);
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Usage: ConsoleApp --dictionary build wordList modelFile");
+            System.err.println("       ConsoleApp --dictionary segment modelFile [textFile]");
+            return 2;
+        }
+
+        try {
+            if (build) {
+                int count;
+                try (InputStream in = Files.newInputStream(first)) {
+                    count = WordSegmenter.build(in, second);
+                }
+                System.err.println("Added " + count + " words");
+                return 0;
+            }
+
+            WordSegmenter dictionary = WordSegmenter.open(first);
+            try (InputStream in = second != null ? Files.newInputStream(second)
+                    : new FileInputStream(FileDescriptor.in);
+                 OutputStream out = dictionary.segmenting(new FileOutputStream(FileDescriptor.out))) {
+                in.transferTo(out);
+            }
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Error: " + e);
+            return 1;
+        }
+    }
+
+    /**
+     * Runs a Kasiski examination over a cipher text file and prints the most likely vigenere key lengths.
+     *
+     * @param args --kasiski with a cipher text file, and optionally --min for the shortest repeat, --max for the
+     *             longest key length and --top for the number of lengths printed
+     * @return exit status
+     */
+    private int runKasiski(String[] args) {
+        Path cipherTextFile;
+        int minLength = 3;
+        int maxKeyLength = 32;
+        int top = 5;
+        try {
+            cipherTextFile = Paths.get(args[1]);
+            for (int i = 2; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--min" -> minLength = Integer.parseInt(args[++i]);
+                    case "--max" -> maxKeyLength = Integer.parseInt(args[++i]);
+                    case "--top" -> top = Integer.parseInt(args[++i]);
+                    default -> throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Usage: ConsoleApp --kasiski cipherTextFile [--min n] [--max n] [--top n]");
+            return 2;
+        }
+
+        try {
+            KasiskiExamination examination = new KasiskiExamination(minLength, maxKeyLength);
+            long start = System.nanoTime();
+            try (InputStream in = Files.newInputStream(cipherTextFile)) {
+                examination.add(in);
+            }
+            List<KasiskiExamination.KeyLength> keyLengths = examination.getKeyLengths();
+            System.err.printf("Examined %d characters in %.2fs, %d repeats, longest %d letters %d apart%n",
+                    examination.getLength(), (System.nanoTime() - start) / 1e9, examination.getRepeatCount(),
+                    examination.getLongestRepeat(), examination.getLongestRepeatDistance());
+            for (KasiskiExamination.KeyLength keyLength : keyLengths.subList(0, Math.min(top, keyLengths.size()))) {
+                System.out.println(keyLength);
+            }
+            return 0;
+        } catch (IOException e) {
+            System.err.println("Error: " + e);
+            return 1;
+        }
+    }
+
+    /**
+     * Checks every way of running the caesar, keyed caesar and vigenere ciphers against a plain version of each,
+     * printing the smallest failing case if any way disagrees.
+     *
+     * @param args --fuzz, and optionally --seed to repeat an earlier run, --cases for the number of random cases,
+     *             --max-length for the longest text and --threads for the most threads used at once
+     * @return exit status, 1 if a case failed
+     */
+    private int runFuzzer(String[] args) {
+        long seed = System.nanoTime();
+        int cases = 10_000;
+        int maxLength = 1 << 17;
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        try {
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--seed" -> seed = Long.parseLong(args[++i]);
+                    case "--cases" -> cases = Integer.parseInt(args[++i]);
+                    case "--max-length" -> maxLength = Integer.parseInt(args[++i]);
+                    case "--threads" -> threads = Integer.parseInt(args[++i]);
+                    default -> throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Usage: ConsoleApp --fuzz [--seed n] [--cases n] [--max-length n] [--threads n]");
+            return 2;
+        }
+
+        long start = System.nanoTime();
+        CipherFuzzer.Failure failure = new CipherFuzzer(seed, maxLength, threads).run(cases);
+        if (failure != null) {
+            System.out.println("Failed with seed " + seed + ": " + failure);
+            return 1;
+        }
+        System.err.printf("%d cases passed in %.2fs with seed %d%n", cases, (System.nanoTime() - start) / 1e9,
+                seed);
+        return 0;
+    }
+
+    /**
+     * Measures how much every cipher allocates per character on its hot paths, printing each result and failing if
+     * any goes over its budget.
+     *
+     * @param args --alloc-check, and optionally --length for the length of text and --rounds for the number of
+     *             runs measured
+     * @return exit status, 1 if anything went over budget
+     */
+    private int runAllocationCheck(String[] args) {
+        int length = 1 << 20;
+        int rounds = 5;
+        try {
+            for (int i = 1; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--length" -> length = Integer.parseInt(args[++i]);
+                    case "--rounds" -> rounds = Integer.parseInt(args[++i]);
+                    default -> throw new IllegalArgumentException(args[i]);
+                }
+            }
+        } catch (IllegalArgumentException | ArrayIndexOutOfBoundsException e) {
+            System.err.println("Usage: ConsoleApp --alloc-check [--length n] [--rounds n]");
+            return 2;
+        }
+
+        try {
+            boolean passed = true;
+            for (AllocationCheck.Result result : new AllocationCheck(length, rounds).run()) {
+                System.out.println(result);
+                passed &= result.passed();
+            }
+            return passed ? 0 : 1;
+        } catch (IOException e) {
+            System.err.println("Error: " + e);
+            return 1;
+        }
+    }
+
+    /**
+     * Creates the cipher matching a menu choice or name.
+     *
+     * @param choice the cipher number or name
+     * @return a new cipher, or null if the choice isn't valid
+     */
+    private static CipherEncryptor createCipher(String choice) {
+        return switch (choice.toUpperCase()) {
+            case "CAESAR", "1" -> new CaesarCipher();
+            case "KEYED CAESAR", "KEYED", "2" -> new KeyedCaesarCipher();
+            case "VIGENERE", "3" -> new VigenereCipher();
+            case "RUNNING KEY", "RUNNING", "4" -> new RunningKeyCipher();
+            case "AUTOKEY", "5" -> new AutokeyCipher();
+            case "COLUMNAR", "COLUMNAR TRANSPOSITION", "6" -> new ColumnarTranspositionCipher();
+            default -> null;
+        };
+    }
+
+    //Creates the scanner and cipher object. Loads any key or shift the cipher may need
+    private void setUp() {
+        read = new Scanner(System.in);
+        cipherEncryptor = new CaesarCipher();
+        cipherEncryptor.setProgressListener(new ProgressPrinter());
+        changeInput();
+        try {
+            updateCipher();
+        } catch (IOException e) {
+            System.out.println("Error: " + e);
+        }
+    }
+
+
+    private void printMenu() {
+        System.out.println("1: Choose a cipher (Current: " + cipherEncryptor.getCipherName() + ")");
+        System.out.println("2: Edit cipher key");
+        System.out.println("3: Display key");
+        System.out.println("4: Change input file");
+        System.out.println("5: Display input text");
+        System.out.println("6: Encrypt input file");
+        System.out.println("7: Display cipher text");
+        System.out.println("8: Save encrypted text to file");
+        System.out.println("9: Input cipher text");
+        System.out.println("10: Decrypt cipher text");
+        System.out.println("11: Load dictionary (Current: " + (segmenter == null ? "none" : "loaded") + ")");
+        System.out.println("E: Exit");
+
+    }
+
+    /**
+     * runs the menu system from main. Allows for the choosing of actions.
+     */
+    private void runMenu() {
+        String input;
+
+        do { //Asks the user for input
+            printMenu();
+            System.out.println("Choose an action: ");
+            input = read.nextLine().toUpperCase();
+            UserActionEvent action = new UserActionEvent("Console", menuAction(input),
+                    cipherEncryptor.getCipherName());
+
+            switch (input) {
+                case "1": // Choose a cipher
+                    chooseCipher();
+                    break;
+                case "2": // Edit Cipher key
+                    setKey();
+                    break;
+                case "3": // Display key
+                    displayKey();
+                    break;
+                case "4": // Change input file
+                    changeInput();
+                    break;
+                case "5": // Display input text
+                    printPreparedText();
+                    break;
+                case "6": // Encrypt input text
+                    encryptText();
+                    break;
+                case "7": // Display cipher text
+                    printCipherText();
+                    break;
+                case "8": // Save encrypted text to file
+                    saveCipherText();
+                    break;
+                case "9": // Input cipher text
+                    inputCipherText();
+                    break;
+                case "10": // Decrypt cipher text
+                    decryptText();
+                    break;
+                case "11": // Load dictionary
+                    loadDictionary();
+                    break;
+                case "E": // Exit
+                    break;
+            }
+            action.finish("Completed");
+
+        } while (!input.equals("E"));
+    }
+
+    /**
+     * Names a menu choice for flight recordings.
+     *
+     * @param input the menu choice
+     * @return the action chosen
+     */
+    private static String menuAction(String input) {
+        return switch (input) {
+            case "1" -> "Choose a cipher";
+            case "2" -> "Edit cipher key";
+            case "3" -> "Display key";
+            case "4" -> "Change input file";
+            case "5" -> "Display input text";
+            case "6" -> "Encrypt input text";
+            case "7" -> "Display cipher text";
+            case "8" -> "Save encrypted text";
+            case "9" -> "Input cipher text";
+            case "10" -> "Decrypt cipher text";
+            case "11" -> "Load dictionary";
+            case "E" -> "Exit";
+            default -> "Unknown choice";
+        };
+    }
+
+    /**
+     * Prompts the user to input a selection of cipher, which is then created and prepared for use for encryption/decryption
+     */
+    private void chooseCipher() {
+        String choice;
+        System.out.println("Which cipher would you like to use? (1. Caesar, 2. Keyed Caesar, 3. Vigenere, 4. Running Key, 5. Autokey or 6. Columnar Transposition)");
+        choice = read.nextLine().toUpperCase();
+
+        CipherEncryptor chosen = createCipher(choice);
+        if (chosen == null) {
+            System.out.println("Not a valid choice");
+        } else {
+            cipherEncryptor = chosen;
+            cipherEncryptor.setProgressListener(new ProgressPrinter());
+            cipherEncryptor.setRawTextFile(inputFile);
+        }
+        try {
+            updateCipher();
+        } catch (IOException e) {
+            System.out.println("Error updating ciphers: " + e);
+        }
+
+    }
+
+    /**
+     * Allows the user to choose a text file to input.
+     */
+    private void changeInput() {
+        //Takes the user input
+        System.out.println("Please enter a filename: ");
+        inputFile = read.nextLine();
+        cipherEncryptor.setRawTextFile(inputFile);
+        //Attempts to load the input files and prepare the text.
+        try {
+            cipherEncryptor.loadRawText();
+            cipherEncryptor.prepareText();
+        } catch (FileNotFoundException e) {
+            System.err.println("File not found");
+        } catch (IOException e) {
+            System.err.println("Error occurred when attempting to open file: " + cipherEncryptor.getRawTextFile());
+            System.out.println(e.getMessage());
+        }
+
+    }
+
+    /**
+     * Allows the user to choose an encrypted text file to input.
+     */
+    private void inputCipherText() {
+        //Takes the user input
+        System.out.println("Please enter a filename: ");
+        cipherEncryptor.setCipherTextFile(read.nextLine());
+        //Attempts to load the input text
+        try {
+            cipherEncryptor.loadCipherText();
+        } catch (FileNotFoundException e) {
+            System.err.println("File not found");
+        } catch (IOException e) {
+            System.err.println("Error occurred when attempting to open file: " + cipherEncryptor.getRawTextFile());
+            System.out.println(e.getMessage());
+        }
+
+    }
+
+    private void saveCipherText() {
+        System.out.println("Please enter a filename: ");
+        cipherEncryptor.saveCipherText(read.nextLine());
+    }
+
+    private void printCipherText() {
+        System.out.println("Encrypted Text: " + cipherEncryptor.getCipherText());
+    }
+
+    private void setKey() {
+        cipherEncryptor.setCipherKey();
+        displayKey();
+    }
+
+    private void displayKey() {
+        try {
+            cipherEncryptor.loadKey();
+            cipherEncryptor.printKey();
+        } catch (IOException e) {
+            System.err.println(e);
+        }
+    }
+
+    private void printPreparedText() {
+        System.out.println(cipherEncryptor.getPreparedText());
+    }
+
+    /**
+     * Updates the ciphers information to ensure it is up to date - This includes raw text, prepared text and keys.
+     *
+     * @throws IOException An error can arise when updating a cipher - Loading the text is a common culprit
+     */
+    private void updateCipher() throws IOException {
+        try {
+            cipherEncryptor.loadRawText();
+            cipherEncryptor.prepareText();
+            cipherEncryptor.loadKey();
+        } catch (IOException e) {
+            System.out.println("Error: " + e);
+        }
+    }
+
+    /**
+     * Runs the encryption algorithm of a chosen cipher. Encrypts prepared text and saves to cipher text.
+     */
+    private void encryptText() {
+        if (cipherEncryptor.getPreparedText() == null) {
+            System.out.println("Nothing to encrypt");
+        } else {
+            cipherEncryptor.setCipherText(cipherEncryptor.encrypt(cipherEncryptor.getPreparedText()));
+        }
+    }
+
+    /**
+     * Runs the decryption algorithm for a chosen cipher. Prints the result to console, split into words if a
+     * dictionary has been loaded.
+     */
+    private void decryptText() {
+        if (segmenter == null) {
+            cipherEncryptor.decrypt();
+        } else if (cipherEncryptor.getCipherText() == null) {
+            System.out.println("Nothing to decrypt");
+        } else {
+            System.out.println(segmenter.segment(cipherEncryptor.decrypt(cipherEncryptor.getCipherText())));
+        }
+    }
+
+    /**
+     * Allows the user to choose a dictionary model, built with --dictionary build, to split decrypted text into
+     * words. An empty filename stops splitting.
+     */
+    private void loadDictionary() {
+        System.out.println("Please enter a dictionary model filename, or nothing to stop splitting words: ");
+        String model = read.nextLine();
+        if (model.isEmpty()) {
+            segmenter = null;
+            return;
+        }
+        try {
+            segmenter = WordSegmenter.open(Paths.get(model));
+        } catch (IOException e) {
+            System.err.println("Error occurred when attempting to open dictionary: " + model);
+            System.out.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Shows how far an operation has got on a single line of standard error, rewritten as it goes. Operations that
+     * finish before their first report aren't shown, so quick menu actions don't print anything.
+     */
+    private static class ProgressPrinter implements ProgressListener {
+        private boolean shown;
+
+        @Override
+        public void progress(long processed, long total, double bytesPerSecond, long remainingNanos) {
+            boolean finished = processed == total && remainingNanos == 0;
+            if (finished && !shown) {
+                return;
+            }
+            if (total > 0) {
+                System.err.printf("\r%5.1f%%  %8.1f MB/s  ETA %s   ", processed * 100.0 / total, bytesPerSecond / 1e6,
+                        remainingNanos < 0 ? "?" : (remainingNanos + 999_999_999L) / 1_000_000_000L + "s");
+            } else {
+                System.err.printf("\r%8.1f MB  %8.1f MB/s   ", processed / 1e6, bytesPerSecond / 1e6);
+            }
+            shown = !finished;
+            if (finished) {
+                System.err.println();
+            }
+        }
+    }
+}
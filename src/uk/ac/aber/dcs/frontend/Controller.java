@@ -1,280 +1,543 @@
-package uk.ac.aber.dcs.frontend;
-
-import uk.ac.aber.dcs.backend.CipherEncryptor;
-import uk.ac.aber.dcs.backend.CaesarCipher;
-import uk.ac.aber.dcs.backend.KeyedCaesarCipher;
-import uk.ac.aber.dcs.backend.VigenereCipher;
-import javafx.collections.FXCollections;
-import javafx.collections.ObservableList;
-import javafx.fxml.FXML;
-import javafx.scene.control.*;
-import javafx.stage.FileChooser;
-
-import java.io.File;
-import java.io.IOException;
-
-/**
- * The GUI controller class. Handles the use of the GUI.
- * @author Jamie Gregory [jag73]
- * @version 1.0
- */
-public class Controller {
-    private CipherEncryptor cipherEncryptor;
-    private File inputLocation;
-    private File encryptedInputLocation;
-
-    //MenuBar
-    @FXML
-    private MenuBar bar;
-    @FXML
-    private MenuItem load;
-    @FXML
-    private MenuItem loadEncrypted;
-
-    //FileChooser
-    @FXML
-    private FileChooser file;
-    private File input;
-
-    // Cipher box
-    private ObservableList<String> cipherStatus = FXCollections.observableArrayList("Caesar Cipher", "Keyed Caesar Cipher", "Vigenere Cipher");
-    @FXML
-    private ChoiceBox cipherStatusBox;
-
-    //key and shift
-    @FXML
-    private Label keyLabel;
-    @FXML
-    private TextField keyInput;
-    @FXML
-    private Slider shiftInput;
-    @FXML
-    private Label shiftLabel;
-
-    //Labels for display
-    @FXML
-    private TextArea inputField;
-    @FXML
-    private TextArea preparedField;
-    @FXML
-    private TextArea outputField;
-
-    /**
-     * runs at startup - initializes the choice box, adds a listener to the shift slider and sets the
-     * default text file location.
-     * @throws IOException
-     */
-    public void initialize() throws IOException {
-        //Initialize the input file - Can be changed by user
-        inputLocation = new File(".\\src\\Text\\defaultInput.txt");
-        //Initialize the cipher status box
-        cipherStatusBox.setItems(cipherStatus);
-        cipherStatusBox.setValue("Caesar Cipher");
-        cipherEncryptor.loadKey();
-        shiftInput.valueProperty().addListener((observable, oldValue, newValue) -> {
-            try {
-                keyOrShift();
-            } catch (IOException e) {
-                System.err.println("Error: " + e);
-            }
-        });
-        shiftInput.setValue(cipherEncryptor.getShift());
-    }
-
-    /**
-     * Gets the current value of the cipherStatus box.
-     * @return cipher
-     */
-    private String cipherStatus(){
-        return cipherStatusBox.getValue().toString();
-    }
-
-    /**
-     * Creates a new cipher object when selected. Updates the ui and any information required by the cipher.
-     * @throws IOException thrown when the program fails to load a file.
-     */
-    //Called When cipher is selected
-    public void setCipher() throws IOException {
-        switch (cipherStatus()) {
-            case "Caesar Cipher":
-                cipherEncryptor = new CaesarCipher();
-                setShiftVisible(true);
-                setKeyVisible(false);
-                cipherEncryptor.loadKey();
-                shiftInput.setValue(cipherEncryptor.getShift());
-                loadInputText(inputLocation);
-                break;
-            case "Keyed Caesar Cipher":
-                cipherEncryptor = new KeyedCaesarCipher();
-                setShiftVisible(true);
-                setKeyVisible(true);
-                cipherEncryptor.loadKey();
-                keyInput.setText(cipherEncryptor.getKey());
-                shiftInput.setValue(cipherEncryptor.getShift());
-                loadInputText(inputLocation);
-                break;
-            case "Vigenere Cipher":
-                cipherEncryptor = new VigenereCipher();
-                setShiftVisible(false);
-                setKeyVisible(true);
-                cipherEncryptor.loadKey();
-                keyInput.setText(cipherEncryptor.getKey());
-                loadInputText(inputLocation);
-                break;
-        }
-    }
-
-    /**
-     * sets the visibilty of the shift elements when not needed by a cipher.
-     * @param visibility true or false
-     */
-    // Hiding the shift settings when not necessary
-    public void setShiftVisible(boolean visibility) {
-        shiftLabel.setVisible(visibility);
-        shiftInput.setVisible(visibility);
-    }
-
-    /**
-     * sets the visibilty of the key elements when not needed by a cipher.
-     * @param visibility true or false
-     */
-    // Hiding the key settings when not necessary
-    public void setKeyVisible(boolean visibility) {
-        keyInput.setVisible(visibility);
-        keyLabel.setVisible(visibility);
-    }
-
-    /**
-     * allows the user to choose a file for input.
-     * @throws IOException thrown when the file cannot be loaded
-     */
-    // Run when menu item is selected
-    public void chooseInputFile() throws IOException {
-        file = new FileChooser();
-        file.setTitle("Open text file");
-        input = file.showOpenDialog(bar.getScene().getWindow());
-        inputLocation = input;
-        // If user presses cancel - return
-        if (input != null) {
-            loadInputText(input);
-        } else {
-            return;
-        }
-
-    }
-
-    /**
-     * allows the user to choose an already encrypted file for input.
-     * @throws IOException
-     */
-    // Run when menu item is selected
-    public void chooseEncryptedFile()throws IOException{
-        file = new FileChooser();
-        file.setTitle("Open text file");
-        input = file.showOpenDialog(bar.getScene().getWindow());
-        encryptedInputLocation = input;
-        // If user presses cancel - return null and handle it
-        if (input != null) {
-            loadEncryptedInput(input);
-        } else {
-            return;
-        }
-    }
-
-    /**
-     * Allows the user to save the encrypted text to a file.
-     */
-    // Run when menu item is selected
-    public void saveEncryptedFile() {
-        FileChooser save = new FileChooser();
-        save.setTitle("Save text file");
-        File outputFile = save.showSaveDialog(bar.getScene().getWindow());
-        if (outputFile != null) {
-            cipherEncryptor.saveCipherText(outputFile.getPath());
-        } else {
-            return;
-        }
-    }
-
-    /**
-     * Performs the encryption, but only if the text has been prepared first.
-     */
-    public void performEncryption(){
-        if (cipherEncryptor.getPreparedText() != null){
-            cipherEncryptor.setCipherText(cipherEncryptor.encrypt(cipherEncryptor.getPreparedText()));
-            outputField.setText(cipherEncryptor.getCipherText());
-        } else {
-            return;
-        }
-    }
-
-    /**
-     * Performs the decryption, but only if the ciphertext exists.
-     */
-    public void performDecryption(){
-        if (cipherEncryptor.getCipherText() != null){
-            cipherEncryptor.decrypt();
-            preparedField.setText(cipherEncryptor.getPreparedText());
-        } else {
-            return;
-        }
-    }
-
-    /**
-     * Clears all text fields.
-     */
-    public void clearTextFields(){
-        inputField.setText("");
-        preparedField.setText("");
-        outputField.setText("");
-    }
-
-    /**
-     * performs the loading of the input file.
-     * @param inputFile the input file path
-     * @throws IOException thrown when the program fails to load the file
-     */
-    // Loads the input text from file
-    public void loadInputText(File inputFile) throws IOException {
-        clearTextFields();
-        cipherEncryptor.setRawTextFile(inputFile.getPath());
-        cipherEncryptor.loadRawText();
-        cipherEncryptor.prepareText();
-        inputField.setText(cipherEncryptor.getRawText());
-        preparedField.setText(cipherEncryptor.getPreparedText());
-    }
-
-    /**
-     * Performs the loading of the input encrypted file
-     * @param encrypted the encrypted file path
-     * @throws IOException thrown when the program fails to load the file
-     */
-    public void loadEncryptedInput(File encrypted) throws IOException {
-        clearTextFields();
-        cipherEncryptor.setCipherTextFile(encrypted.getPath());
-        cipherEncryptor.loadCipherText();
-        outputField.setText(cipherEncryptor.getCipherText());
-    }
-
-    /**
-     * sets the key and shift, depending on which cipher is currently in use.
-     * @throws IOException
-     */
-    public void keyOrShift() throws IOException {
-        switch (cipherStatus()){
-            case "Caesar Cipher":
-                cipherEncryptor.setShift((int)(shiftInput.getValue()));
-                cipherEncryptor.writeKey();
-                break;
-            case "Keyed Caesar Cipher":
-                cipherEncryptor.setShift((int)(shiftInput.getValue()));
-                cipherEncryptor.setKey(keyInput.getText());
-                cipherEncryptor.writeKey();
-                break;
-            case "Vigenere Cipher":
-                cipherEncryptor.setKey(keyInput.getText());
-                cipherEncryptor.writeKey();
-                break;
-        }
-    }
-}
+package uk.ac.aber.dcs.frontend;
+
+import uk.ac.aber.dcs.backend.CancellationToken;
+import uk.ac.aber.dcs.backend.CipherEncryptor;
+import uk.ac.aber.dcs.backend.CipherSession;
+import uk.ac.aber.dcs.backend.ResultCache;
+import uk.ac.aber.dcs.backend.TextStatistics;
+import uk.ac.aber.dcs.backend.WordSegmenter;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.fxml.FXML;
+import javafx.scene.Scene;
+import javafx.scene.chart.BarChart;
+import javafx.scene.chart.CategoryAxis;
+import javafx.scene.chart.NumberAxis;
+import javafx.scene.chart.XYChart;
+import javafx.scene.control.*;
+import javafx.stage.FileChooser;
+import javafx.stage.Stage;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+
+/**
+ * The GUI controller class. Handles the use of the GUI.
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+public class Controller {
+    private CipherEncryptor cipherEncryptor;
+    private File inputLocation;
+    private File encryptedInputLocation;
+    // Shared by every cipher, so switching back to a cipher or key doesn't redo work
+    private final ResultCache resultCache = new ResultCache(64, 64L << 20);
+    // Keeps every cipher used so far, with its key loaded and the input shared between them
+    private final CipherSession session = new CipherSession(resultCache);
+    // Longer texts are cut short in the text fields, the full text is still used for encrypting and saving
+    private static final int PREVIEW_LENGTH = 1 << 16;
+    // Stops the operation running in the background, null when nothing is running
+    private CancellationToken runningOperation;
+    // Splits decrypted text into words, null until a dictionary is loaded
+    private WordSegmenter segmenter;
+
+    //MenuBar
+    @FXML
+    private MenuBar bar;
+    @FXML
+    private MenuItem load;
+    @FXML
+    private MenuItem loadEncrypted;
+
+    //FileChooser
+    @FXML
+    private FileChooser file;
+    private File input;
+
+    // Cipher box
+    private ObservableList<String> cipherStatus = FXCollections.observableArrayList("Caesar Cipher", "Keyed Caesar Cipher", "Vigenere Cipher", "Running Key Cipher", "Autokey Cipher",
+            "Columnar Transposition Cipher");
+    @FXML
+    private ChoiceBox cipherStatusBox;
+
+    //key and shift
+    @FXML
+    private Label keyLabel;
+    @FXML
+    private TextField keyInput;
+    @FXML
+    private Slider shiftInput;
+    @FXML
+    private Label shiftLabel;
+
+    //Labels for display
+    @FXML
+    private TextArea inputField;
+    @FXML
+    private TextArea preparedField;
+    @FXML
+    private TextArea outputField;
+
+    //Progress of background operations
+    @FXML
+    private ProgressBar progressBar;
+    @FXML
+    private Label progressLabel;
+    @FXML
+    private Button cancelButton;
+
+    /**
+     * runs at startup - initializes the choice box, adds a listener to the shift slider and sets the
+     * default text file location.
+     * @throws IOException
+     */
+    public void initialize() throws IOException {
+        //Initialize the input file - Can be changed by user
+        inputLocation = new File(".\\src\\Text\\defaultInput.txt");
+        //Initialize the cipher status box
+        cipherStatusBox.setItems(cipherStatus);
+        cipherStatusBox.setValue("Caesar Cipher");
+        cipherEncryptor.loadKey();
+        shiftInput.valueProperty().addListener((observable, oldValue, newValue) -> {
+            try {
+                keyOrShift();
+            } catch (IOException e) {
+                System.err.println("Error: " + e);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+            }
+        });
+        shiftInput.setValue(cipherEncryptor.getShift());
+    }
+
+    /**
+     * Gets the current value of the cipherStatus box.
+     * @return cipher
+     */
+    private String cipherStatus(){
+        return cipherStatusBox.getValue().toString();
+    }
+
+    /**
+     * Switches to the selected cipher. Each cipher is only created and has its key loaded the first time it is
+     * selected, and every cipher shares the input already loaded, so switching doesn't touch the disk.
+     * @throws IOException thrown when the program fails to load a key.
+     */
+    //Called When cipher is selected
+    public void setCipher() throws IOException {
+        cancelOperation();
+        UserActionEvent action = new UserActionEvent("JavaFX", "Switch cipher", cipherStatus());
+        // Recorded as failed unless the switch gets to the end, such as when a key can't be loaded
+        String outcome = "Failed";
+        try {
+            cipherEncryptor = session.activate(cipherStatus());
+            switch (cipherStatus()) {
+                case "Caesar Cipher":
+                    setShiftVisible(true);
+                    setKeyVisible(false);
+                    shiftInput.setValue(cipherEncryptor.getShift());
+                    break;
+                case "Keyed Caesar Cipher":
+                    setShiftVisible(true);
+                    setKeyVisible(true);
+                    keyInput.setText(cipherEncryptor.getKey());
+                    shiftInput.setValue(cipherEncryptor.getShift());
+                    break;
+                case "Vigenere Cipher":
+                case "Running Key Cipher":
+                case "Autokey Cipher":
+                case "Columnar Transposition Cipher":
+                    setShiftVisible(false);
+                    setKeyVisible(true);
+                    keyInput.setText(cipherEncryptor.getKey());
+                    break;
+            }
+            if (cipherEncryptor.getRawText() == null) {
+                loadInputText(inputLocation);
+            } else {
+                inputField.setText(preview(cipherEncryptor.getRawText()));
+                preparedField.setText(preview(cipherEncryptor.getPreparedView()));
+                // The cipher's last output is only shown if it still matches the input and key
+                outputField.setText(session.isOutputCurrent(cipherEncryptor) ? preview(cipherEncryptor.getCipherText())
+                        : "");
+            }
+            outcome = "Completed";
+        } finally {
+            action.finish(outcome);
+        }
+    }
+
+    /**
+     * sets the visibilty of the shift elements when not needed by a cipher.
+     * @param visibility true or false
+     */
+    // Hiding the shift settings when not necessary
+    public void setShiftVisible(boolean visibility) {
+        shiftLabel.setVisible(visibility);
+        shiftInput.setVisible(visibility);
+    }
+
+    /**
+     * sets the visibilty of the key elements when not needed by a cipher.
+     * @param visibility true or false
+     */
+    // Hiding the key settings when not necessary
+    public void setKeyVisible(boolean visibility) {
+        keyInput.setVisible(visibility);
+        keyLabel.setVisible(visibility);
+    }
+
+    /**
+     * allows the user to choose a file for input.
+     * @throws IOException thrown when the file cannot be loaded
+     */
+    // Run when menu item is selected
+    public void chooseInputFile() throws IOException {
+        file = new FileChooser();
+        file.setTitle("Open text file");
+        input = file.showOpenDialog(bar.getScene().getWindow());
+        inputLocation = input;
+        // If user presses cancel - return
+        if (input != null) {
+            loadInputText(input);
+        } else {
+            return;
+        }
+
+    }
+
+    /**
+     * allows the user to choose an already encrypted file for input.
+     * @throws IOException
+     */
+    // Run when menu item is selected
+    public void chooseEncryptedFile()throws IOException{
+        file = new FileChooser();
+        file.setTitle("Open text file");
+        input = file.showOpenDialog(bar.getScene().getWindow());
+        encryptedInputLocation = input;
+        // If user presses cancel - return null and handle it
+        if (input != null) {
+            loadEncryptedInput(input);
+        } else {
+            return;
+        }
+    }
+
+    /**
+     * allows the user to choose a dictionary model, built with the console app's --dictionary build, to split
+     * decrypted text into words.
+     */
+    // Run when menu item is selected
+    public void chooseDictionary() {
+        FileChooser dictionary = new FileChooser();
+        dictionary.setTitle("Open dictionary model");
+        File model = dictionary.showOpenDialog(bar.getScene().getWindow());
+        if (model != null) {
+            try {
+                segmenter = WordSegmenter.open(model.toPath());
+            } catch (IOException e) {
+                new Alert(Alert.AlertType.ERROR, "Error: " + e).show();
+            }
+        } else {
+            return;
+        }
+    }
+
+    /**
+     * Allows the user to save the encrypted text to a file.
+     */
+    // Run when menu item is selected
+    public void saveEncryptedFile() {
+        FileChooser save = new FileChooser();
+        save.setTitle("Save text file");
+        File outputFile = save.showSaveDialog(bar.getScene().getWindow());
+        if (outputFile != null) {
+            CipherEncryptor cipher = cipherEncryptor;
+            runInBackground("Saving", () -> {
+                cipher.saveCipherText(outputFile.getPath());
+                return null;
+            }, result -> {
+            });
+        } else {
+            return;
+        }
+    }
+
+    /**
+     * Performs the encryption, but only if the text has been prepared first.
+     */
+    public void performEncryption(){
+        if (cipherEncryptor.getRawText() != null){
+            CipherEncryptor cipher = cipherEncryptor;
+            // Nothing is encrypted again if the input and key haven't changed
+            runInBackground("Encrypting", () -> preview(session.encrypt(cipher)), outputField::setText);
+        } else {
+            return;
+        }
+    }
+
+    /**
+     * Performs the decryption, but only if the ciphertext exists.
+     */
+    public void performDecryption(){
+        if (cipherEncryptor.getCipherText() != null){
+            CipherEncryptor cipher = cipherEncryptor;
+            WordSegmenter dictionary = segmenter;
+            runInBackground("Decrypting", () -> {
+                String decrypted = preview(cipher.decryptedView(cipher.getCipherText()));
+                // Only the part shown is split into words
+                return dictionary == null ? decrypted : dictionary.segment(decrypted);
+            }, preparedField::setText);
+        } else {
+            return;
+        }
+    }
+
+    /**
+     * Clears all text fields.
+     */
+    public void clearTextFields(){
+        inputField.setText("");
+        preparedField.setText("");
+        outputField.setText("");
+    }
+
+    /**
+     * performs the loading of the input file in the background.
+     * @param inputFile the input file path
+     */
+    // Loads the input text from file
+    public void loadInputText(File inputFile) {
+        clearTextFields();
+        CipherEncryptor cipher = cipherEncryptor;
+        cipher.setCollectStatistics(true);
+        cipher.setRawTextFile(inputFile.getPath());
+        runInBackground("Loading", () -> {
+            cipher.loadRawText();
+            // The text is only prepared in full when it is encrypted
+            return new String[]{preview(cipher.getRawText()), preview(cipher.getPreparedView())};
+        }, previews -> {
+            session.inputLoaded(cipher);
+            inputField.setText(previews[0]);
+            preparedField.setText(previews[1]);
+        });
+    }
+
+    /**
+     * Performs the loading of the input encrypted file in the background.
+     * @param encrypted the encrypted file path
+     */
+    public void loadEncryptedInput(File encrypted) {
+        clearTextFields();
+        CipherEncryptor cipher = cipherEncryptor;
+        cipher.setCollectStatistics(true);
+        cipher.setCipherTextFile(encrypted.getPath());
+        runInBackground("Loading", () -> {
+            cipher.loadCipherText();
+            return preview(cipher.getCipherText());
+        }, cipherText -> {
+            session.cipherTextLoaded(cipher);
+            outputField.setText(cipherText);
+        });
+    }
+
+    /**
+     * Runs a cipher operation on a background thread so the window keeps responding, showing its progress and
+     * letting the cancel button stop it. Starting an operation cancels the one already running. The result is
+     * handed back on the JavaFX thread, unless the operation was cancelled or failed.
+     * @param name what the operation is doing, shown next to the progress bar
+     * @param operation the operation, which must only use the cipher it was given
+     * @param done shows the result
+     * @param <T> the type of result
+     */
+    private <T> void runInBackground(String name, Callable<T> operation, Consumer<T> done) {
+        cancelOperation();
+        CipherEncryptor cipher = cipherEncryptor;
+        // Runs until the result is shown, so it covers the background work and the wait for the JavaFX thread
+        UserActionEvent action = new UserActionEvent("JavaFX", name, cipher.getCipherName());
+        CancellationToken token = new CancellationToken();
+        runningOperation = token;
+        cipher.setCancellationToken(token);
+        cipher.setProgressListener((processed, total, rate, remaining) -> Platform.runLater(() -> {
+            if (runningOperation == token) {
+                showProgress(name, processed, total, rate, remaining);
+            }
+        }));
+        progressBar.setProgress(0);
+        progressLabel.setText(name);
+        cancelButton.setDisable(false);
+
+        Thread worker = new Thread(() -> {
+            try {
+                T result = operation.call();
+                Platform.runLater(() -> {
+                    String outcome = "Failed";
+                    try {
+                        if (finishOperation(cipher, token, name + " done")) {
+                            done.accept(result);
+                        }
+                        outcome = "Completed";
+                    } finally {
+                        action.finish(outcome);
+                    }
+                });
+            } catch (CancellationException e) {
+                Platform.runLater(() -> {
+                    finishOperation(cipher, token, name + " cancelled");
+                    action.finish("Cancelled");
+                });
+            } catch (Exception e) {
+                Platform.runLater(() -> {
+                    if (finishOperation(cipher, token, name + " failed")) {
+                        new Alert(Alert.AlertType.ERROR, "Error: " + e).show();
+                    }
+                    action.finish("Failed");
+                });
+            }
+        }, "cipher-operation");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Takes the finished operation's token and listener off its cipher, and shows how it ended if it is still the
+     * latest operation.
+     * @param cipher the cipher the operation used
+     * @param token the operation's token
+     * @param status how the operation ended
+     * @return true if it was the latest operation
+     */
+    private boolean finishOperation(CipherEncryptor cipher, CancellationToken token, String status) {
+        if (cipher.getCancellationToken() == token) {
+            cipher.setCancellationToken(null);
+            cipher.setProgressListener(null);
+        }
+        if (runningOperation != token) {
+            return false;
+        }
+        runningOperation = null;
+        progressLabel.setText(status);
+        cancelButton.setDisable(true);
+        return true;
+    }
+
+    /**
+     * Shows the progress of the running operation.
+     * @param name what the operation is doing
+     * @param processed bytes or characters done
+     * @param total bytes or characters in the operation, or -1 if not known
+     * @param rate bytes or characters per second
+     * @param remaining estimated nanoseconds left, or -1 if not known
+     */
+    private void showProgress(String name, long processed, long total, double rate, long remaining) {
+        progressBar.setProgress(total > 0 ? (double) processed / total : ProgressBar.INDETERMINATE_PROGRESS);
+        String eta = remaining < 0 ? "" : String.format(", %ds left", (remaining + 999_999_999L) / 1_000_000_000L);
+        progressLabel.setText(String.format("%s %.1f MB/s%s", name, rate / 1e6, eta));
+    }
+
+    /**
+     * Stops the operation running in the background, if there is one.
+     */
+    // Run when the cancel button is pressed
+    public void cancelOperation() {
+        if (runningOperation != null) {
+            runningOperation.cancel();
+        }
+    }
+
+    /**
+     * Cuts text down to what a text field can show quickly. Views are only transformed as far as the preview.
+     *
+     * @param text the text
+     * @return the start of the text, or all of it if it is short enough
+     */
+    private static String preview(CharSequence text) {
+        if (text == null) {
+            return "";
+        }
+        if (text.length() <= PREVIEW_LENGTH) {
+            return text.toString();
+        }
+        return text.subSequence(0, PREVIEW_LENGTH) + "...";
+    }
+
+    /**
+     * Opens a window charting the letter frequencies of the prepared text and the encrypted text.
+     */
+    // Run when menu item is selected
+    public void showStatistics() {
+        CipherEncryptor cipher = cipherEncryptor;
+        // Either may need the whole text prepared or counted first, so they are gathered off the JavaFX thread
+        runInBackground("Counting letters", () -> new TextStatistics[]{cipher.getPreparedStatistics(),
+                cipher.getCipherStatistics()}, statistics -> {
+            CategoryAxis letters = new CategoryAxis();
+            NumberAxis frequency = new NumberAxis();
+            frequency.setLabel("Frequency (%)");
+            BarChart<String, Number> chart = new BarChart<>(letters, frequency);
+            chart.setTitle("Letter frequencies");
+            chart.getData().add(frequencySeries("Prepared text", statistics[0]));
+            chart.getData().add(frequencySeries("Encrypted text", statistics[1]));
+
+            Stage stage = new Stage();
+            stage.setTitle("Letter frequencies");
+            stage.setScene(new Scene(chart, 640, 400));
+            stage.show();
+        });
+    }
+
+    /**
+     * Shows how often loaded text and results have been found in the cache.
+     */
+    // Run when menu item is selected
+    public void showCacheStatistics() {
+        Alert alert = new Alert(Alert.AlertType.INFORMATION, resultCache.toString());
+        alert.setTitle("Cache statistics");
+        alert.setHeaderText(null);
+        alert.show();
+    }
+
+    /**
+     * Builds a chart series with the frequency of each letter.
+     * @param name the series name
+     * @param statistics the letter statistics to chart
+     * @return chart series
+     */
+    private XYChart.Series<String, Number> frequencySeries(String name, TextStatistics statistics) {
+        XYChart.Series<String, Number> series = new XYChart.Series<>();
+        series.setName(name);
+        for (char letter = 'A'; letter <= 'Z'; letter++) {
+            series.getData().add(new XYChart.Data<>(String.valueOf(letter), statistics.getFrequency(letter) * 100));
+        }
+        return series;
+    }
+
+    /**
+     * sets the key and shift, depending on which cipher is currently in use.
+     * @throws IOException
+     */
+    public void keyOrShift() throws IOException {
+        switch (cipherStatus()){
+            case "Caesar Cipher":
+                cipherEncryptor.setShift((int)(shiftInput.getValue()));
+                cipherEncryptor.writeKey();
+                break;
+            case "Keyed Caesar Cipher":
+                cipherEncryptor.setShift((int)(shiftInput.getValue()));
+                cipherEncryptor.setKey(keyInput.getText());
+                cipherEncryptor.writeKey();
+                break;
+            case "Vigenere Cipher":
+            case "Running Key Cipher":
+            case "Autokey Cipher":
+            case "Columnar Transposition Cipher":
+                cipherEncryptor.setKey(keyInput.getText());
+                cipherEncryptor.writeKey();
+                break;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package uk.ac.aber.dcs.frontend;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A Java Flight Recorder event covering one thing the user asked either front end to do, from the moment it was
+ * asked for until its result was shown. The cipher operation events recorded during it show which backend stages
+ * the time went to.
+ *
+ * @author Jamie Gregory [jag73]
+ * @version 1.0
+ */
+@Name("uk.ac.aber.dcs.UserAction")
+@Label("User Action")
+@Category({"Cipher", "Front End"})
+@Description("An action chosen in the console menu, run from the command line or picked in the window")
+@StackTrace(false)
+class UserActionEvent extends jdk.jfr.Event {
+    @Label("Front End")
+    String frontEnd;
+
+    @Label("Action")
+    String action;
+
+    @Label("Cipher")
+    String cipherName;
+
+    @Label("Outcome")
+    String outcome;
+
+    /**
+     * Creates the event and starts timing it.
+     *
+     * @param frontEnd   the front end the action came from
+     * @param action     what the user asked for
+     * @param cipherName the cipher in use when it was asked for
+     */
+    UserActionEvent(String frontEnd, String action, String cipherName) {
+        this.frontEnd = frontEnd;
+        this.action = action;
+        this.cipherName = cipherName;
+        begin();
+    }
+
+    /**
+     * Stops timing the event and commits it, if anything is recording.
+     *
+     * @param result how the action ended
+     */
+    void finish(String result) {
+        end();
+        if (shouldCommit()) {
+            outcome = result;
+            commit();
+        }
+    }
+}